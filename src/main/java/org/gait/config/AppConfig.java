@@ -1,14 +1,35 @@
 package org.gait.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
+@EnableScheduling
+@EnableConfigurationProperties(UpstreamProperties.class)
 public class AppConfig {
 
+    /**
+     * Bounded pool for the blocking steps of asynchronous client requests and their side effects.
+     * Upstream GraphQL calls do not occupy it while in flight.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public ThreadPoolTaskExecutor clientExecutor(@Value("${client.async.core-pool-size:16}") int corePoolSize,
+                                                 @Value("${client.async.max-pool-size:64}") int maxPoolSize,
+                                                 @Value("${client.async.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("client-");
+        // When saturated, the submitting thread does the work instead of dropping it
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
     }
 }
@@ -0,0 +1,40 @@
+package org.gait.config;
+
+import lombok.Data;
+import org.gait.dto.Api;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outbound GraphQL endpoints, one entry per API, e.g.
+ * upstream.apis.github.url=https://api.github.com/graphql
+ */
+@Data
+@ConfigurationProperties(prefix = "upstream")
+public class UpstreamProperties {
+
+    private Map<Api, Endpoint> apis = new EnumMap<>(Api.class);
+
+    // Threads shared by all upstream clients for response handling (not one per in-flight request)
+    private int ioThreads = 4;
+
+    @Data
+    public static class Endpoint {
+        private String url;
+        // Sent as "Authorization: Bearer <token>" when set
+        private String token;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        // Max wait for the response headers
+        private Duration readTimeout = Duration.ofSeconds(10);
+        // Max time for the whole exchange, body included
+        private Duration totalTimeout = Duration.ofSeconds(15);
+        // Requests beyond this many in flight are rejected with 503
+        private int maxConcurrent = 256;
+        // Queries issued within this window are merged into one aliased document (0 disables batching)
+        private Duration batchWindow = Duration.ZERO;
+        private int maxBatchSize = 20;
+    }
+}
@@ -2,9 +2,16 @@ package org.gait.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.gait.database.service.EndpointCallService;
+import org.gait.dto.Api;
+import org.gait.dto.CacheStats;
+import org.gait.dto.CallStatsSort;
+import org.gait.dto.CursorPage;
 import org.gait.dto.EndpointCall;
-import org.springframework.data.domain.Page;
+import org.gait.service.CacheStatsProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -14,9 +21,38 @@ import java.util.List;
 public class AdminController {
 
     private final EndpointCallService endpointCallService;
+    private final List<CacheStatsProvider> cacheStatsProviders;
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Keyset-paginated call statistics.
+     * Example usage: GET /admin/call-stats?api=GITHUB&sort=CALL_COUNT&limit=50&cursor=...
+     */
     @GetMapping("/call-stats")
-    public List<EndpointCall> getCallStats() {
-        return endpointCallService.getCallStats();
+    public CursorPage<EndpointCall> getCallStats(@RequestParam(required = false) Api api,
+                                                 @RequestParam(defaultValue = "ID") CallStatsSort sort,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return endpointCallService.getCallStats(api, sort, cursor, pageSize);
+    }
+
+    /**
+     * Full export of the call statistics as a streamed JSON array.
+     */
+    @GetMapping("/call-stats/export")
+    public ResponseEntity<StreamingResponseBody> exportCallStats(@RequestParam(required = false) Api api) {
+        StreamingResponseBody body = out -> endpointCallService.exportCallStats(api, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @GetMapping("/cache-stats")
+    public List<CacheStats> getCacheStats() {
+        return cacheStatsProviders.stream()
+                .map(CacheStatsProvider::cacheStats)
+                .toList();
     }
 }
@@ -6,13 +6,16 @@ import org.gait.database.entity.Role;
 import org.gait.database.entity.UserEntity;
 import org.gait.database.repository.RoleRepository;
 import org.gait.database.repository.UserRepository;
+import org.gait.database.service.UserCache;
 import org.gait.dto.LoginRequest;
 import org.gait.dto.RegisterRequest;
 import org.gait.dto.RoleName;
 import org.gait.security.JwtUtils;
+import org.gait.security.UserDetailsImpl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
@@ -30,6 +33,7 @@ public class AuthController {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserCache userCache;
 
     /**
      * Existing login endpoint (for reference).
@@ -38,11 +42,11 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<String> login(@RequestBody LoginRequest loginRequest) {
         // Attempt authentication
-        authenticationManager.authenticate(
+        Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword())
         );
-        // If success, generate token
-        String token = jwtUtils.generateToken(loginRequest.getEmail());
+        // If success, generate token carrying the user's id and role
+        String token = jwtUtils.generateToken((UserDetailsImpl) authentication.getPrincipal());
         log.info("User {} logged in. JWT generated", loginRequest.getEmail());
         return ResponseEntity.ok(token);
     }
@@ -82,6 +86,7 @@ public class AuthController {
 
         // 4) Save to DB
         userRepository.save(newUser);
+        userCache.invalidate(newUser.getEmail());
 
         // 5) Optionally return a success message or JWT
         // For example, let's just return a success string
@@ -2,16 +2,29 @@ package org.gait.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.gait.database.entity.UserEntity;
 import org.gait.database.service.EndpointCallService;
-import org.gait.database.service.UserService;
+import org.gait.dto.Api;
 import org.gait.dto.ClientRequest;
+import org.gait.dto.CursorPage;
+import org.gait.security.UserDetailsImpl;
 import org.gait.service.ClientService;
 import org.gait.service.UserHistoryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/client")
@@ -21,29 +34,133 @@ public class ClientController {
 
     private final EndpointCallService endpointCallService;
     private final ClientService clientService;
-    private final UserService userService;
     private final UserHistoryService userHistoryService;
+    private final ThreadPoolTaskExecutor clientExecutor;
+
+    private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
+    @Value("${client.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    @Value("${client.batch.max-size:100}")
+    private int maxBatchSize;
 
     // POST endpoint: process a client prompt and return the GraphQL API result.
     @PostMapping("/use-api")
-    public String processClientRequest(@RequestBody ClientRequest request, Authentication authentication) {
-        UserEntity user = userService.getUserEntity(authentication);
+    public CompletableFuture<String> processClientRequest(@RequestBody ClientRequest request,
+                                                          Authentication authentication) {
+        // The principal is built from the JWT claims: no database lookup needed
+        UserDetailsImpl user = (UserDetailsImpl) authentication.getPrincipal();
         log.info("Client user={} is calling API={}, with prompt='{}'",
                 user.getEmail(), request.getApi(), request.getPrompt());
 
-        // Process the prompt and obtain the GraphQL response.
-        String graphQLResponse = clientService.handleClientPrompt(request);
+        if (!asyncEnabled) {
+            // Process the prompt and obtain the GraphQL response.
+            String graphQLResponse = clientService.handleClientPrompt(request);
+            recordCall(user, request);
+            return CompletableFuture.completedFuture(graphQLResponse);
+        }
+
+        // The Tomcat thread is released here; side effects run once the result is known,
+        // concurrently with writing the response.
+        return clientService.handleClientPromptAsync(request)
+                .thenApply(graphQLResponse -> {
+                    clientExecutor.execute(() -> recordCall(user, request));
+                    return graphQLResponse;
+                });
+    }
+
+    /**
+     * Same as /use-api, but the result is streamed to the caller as the upstream sends it,
+     * without holding the whole payload in memory.
+     */
+    @PostMapping("/use-api/stream")
+    public ResponseEntity<StreamingResponseBody> streamClientRequest(@RequestBody ClientRequest request,
+                                                                     Authentication authentication) {
+        UserDetailsImpl user = (UserDetailsImpl) authentication.getPrincipal();
+        log.info("Client user={} is streaming API={}, with prompt='{}'",
+                user.getEmail(), request.getApi(), request.getPrompt());
 
-        // Increment the call count.
-        endpointCallService.incrementCallCount(user, request.getApi());
-        userHistoryService.saveUserHistory(String.valueOf(user.getId()),request.getPrompt());
+        StreamingResponseBody body = out -> {
+            clientService.streamClientPrompt(request, out);
+            recordCall(user, request);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Processes several prompts at once; results are returned in request order
+     * (null for a prompt that failed). The batch is refused (400) when it is empty, larger than
+     * client.batch.max-size, or has an item without api or prompt.
+     * Example usage: POST /client/use-api/batch
+     *   [ { "prompt": "...", "api": "GITHUB" }, { "prompt": "...", "api": "COUNTRIES" } ]
+     */
+    @PostMapping("/use-api/batch")
+    public CompletableFuture<List<String>> processClientBatch(@RequestBody List<ClientRequest> requests,
+                                                              Authentication authentication) {
+        validateBatch(requests);
+        UserDetailsImpl user = (UserDetailsImpl) authentication.getPrincipal();
+        log.info("Client user={} is sending a batch of {} prompts", user.getEmail(), requests.size());
+
+        return clientService.handleClientPromptBatch(requests)
+                .thenApply(graphQLResponses -> {
+                    clientExecutor.execute(() -> recordCalls(user, requests));
+                    return graphQLResponses;
+                });
+    }
+
+    private void validateBatch(List<ClientRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Empty batch");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch of " + requests.size() + " prompts exceeds the maximum of " + maxBatchSize);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            ClientRequest request = requests.get(i);
+            if (request == null || request.getApi() == null || request.getPrompt() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Batch item " + i + " needs both an api and a prompt");
+            }
+        }
+    }
+
+    /**
+     * Increments the call counts per API and saves all prompts in the user's history, in bulk per API.
+     */
+    private void recordCalls(UserDetailsImpl user, List<ClientRequest> requests) {
+        Map<Api, List<String>> promptsPerApi = requests.stream()
+                .collect(Collectors.groupingBy(ClientRequest::getApi,
+                        Collectors.mapping(ClientRequest::getPrompt, Collectors.toList())));
+        promptsPerApi.forEach((api, prompts) -> {
+            endpointCallService.incrementCallCount(user.getId(), api, prompts.size());
+            userHistoryService.saveUserHistory(String.valueOf(user.getId()), api, prompts);
+        });
+    }
 
-        // Return the GraphQL result to the caller.
-        return graphQLResponse;
+    /**
+     * Increments the call count and saves the prompt in the user's history.
+     */
+    private void recordCall(UserDetailsImpl user, ClientRequest request) {
+        endpointCallService.incrementCallCount(user.getId(), request.getApi());
+        userHistoryService.saveUserHistory(String.valueOf(user.getId()), request.getApi(), request.getPrompt());
     }
 
+    /**
+     * One page of the user's history, most recent first.
+     * Example usage: GET /client/42?from=2025-01-01T00:00:00Z&to=2025-02-01T00:00:00Z&limit=50&cursor=...
+     */
     @GetMapping("/{userId}")
-    public List<UserHistoryService.UserHistoryEntry> getUserHistory(@PathVariable String userId) {
-        return userHistoryService.getHistoryForUser(userId);
+    public CursorPage<UserHistoryService.UserHistoryEntry> getUserHistory(
+            @PathVariable String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        return userHistoryService.getHistoryForUser(userId, from, to, cursor, pageSize);
     }
 }
@@ -1,15 +1,52 @@
 package org.gait.database.repository;
 
+import jakarta.persistence.QueryHint;
 import org.gait.database.entity.EndpointCallEntity;
 import org.gait.database.entity.UserEntity;
+import org.gait.dto.EndpointCall;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface EndpointCallRepository extends JpaRepository<EndpointCallEntity, Long> {
 
     // Find record by user + endpointName
     Optional<EndpointCallEntity> findByUserAndEndpointName(UserEntity user, String endpointName);
+
+    // Keyset page ordered by id, projected with the user's email in a single join
+    @Query("SELECT new org.gait.dto.EndpointCall(e.id, u.email, e.endpointName, e.callCount) " +
+            "FROM EndpointCallEntity e JOIN e.user u " +
+            "WHERE (:endpointName IS NULL OR e.endpointName = :endpointName) AND e.id > :afterId " +
+            "ORDER BY e.id ASC")
+    List<EndpointCall> findCallStatsById(@Param("endpointName") String endpointName,
+                                         @Param("afterId") long afterId,
+                                         Limit limit);
+
+    // Keyset page ordered by call count (highest first), ties broken by id
+    @Query("SELECT new org.gait.dto.EndpointCall(e.id, u.email, e.endpointName, e.callCount) " +
+            "FROM EndpointCallEntity e JOIN e.user u " +
+            "WHERE (:endpointName IS NULL OR e.endpointName = :endpointName) " +
+            "AND (e.callCount < :afterCount OR (e.callCount = :afterCount AND e.id < :afterId)) " +
+            "ORDER BY e.callCount DESC, e.id DESC")
+    List<EndpointCall> findCallStatsByCallCount(@Param("endpointName") String endpointName,
+                                                @Param("afterCount") long afterCount,
+                                                @Param("afterId") long afterId,
+                                                Limit limit);
+
+    // Every row, fetched through a server-side cursor for streaming exports
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new org.gait.dto.EndpointCall(e.id, u.email, e.endpointName, e.callCount) " +
+            "FROM EndpointCallEntity e JOIN e.user u " +
+            "WHERE (:endpointName IS NULL OR e.endpointName = :endpointName) " +
+            "ORDER BY e.id ASC")
+    Stream<EndpointCall> streamCallStats(@Param("endpointName") String endpointName);
 }
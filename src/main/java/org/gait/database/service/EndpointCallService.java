@@ -1,59 +1,173 @@
 package org.gait.database.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
-import org.gait.database.entity.EndpointCallEntity;
-import org.gait.database.entity.UserEntity;
+import lombok.extern.slf4j.Slf4j;
 import org.gait.database.repository.EndpointCallRepository;
-import org.gait.database.repository.UserRepository;
 import org.gait.dto.Api;
+import org.gait.dto.CallStatsSort;
+import org.gait.dto.CursorPage;
 import org.gait.dto.EndpointCall;
+import org.gait.service.PipelineMetrics;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class EndpointCallService {
 
-    private final UserRepository userRepository;
+    private static final String UPSERT_CALL_COUNT =
+            "INSERT INTO endpoint_call (user_id, endpoint_name, call_count) VALUES (?, ?, ?) " +
+            "ON CONFLICT (user_id, endpoint_name) " +
+            "DO UPDATE SET call_count = endpoint_call.call_count + excluded.call_count";
+
     private final EndpointCallRepository endpointCallRepository;
+    private final JdbcBatchWriter jdbcBatchWriter;
+    private final ObjectMapper objectMapper;
+    private final PipelineMetrics pipelineMetrics;
+
+    // Calls not yet written to the database, per (user, endpoint).
+    private final Map<CounterKey, LongAdder> pendingCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a call in memory; no database access happens on the request path.
+     * The pending counts are written by {@link #flushCallCounts()}.
+     */
+    public void incrementCallCount(Long userId, Api api) {
+        incrementCallCount(userId, api, 1);
+    }
 
     /**
-     * Optionally increment a call counter using your EndpointCall entity.
-     * This can go in a service, but for brevity, we'll do it here.
+     * Counts several calls of the same user to the same endpoint at once.
      */
-    public void incrementCallCount(UserEntity user, Api api) {
-        String endpointName = api.toString();
-        var endpointCallOpt = endpointCallRepository.findByUserAndEndpointName(user, endpointName);
-
-        EndpointCallEntity endpointCall = endpointCallOpt.orElseGet(() -> {
-            // create a new record for (user, api)
-            EndpointCallEntity newCall = EndpointCallEntity.builder()
-                    .user(user)
-                    .endpointName(endpointName)
-                    .callCount(0L)
-                    .build();
-            return endpointCallRepository.save(newCall);
+    public void incrementCallCount(Long userId, Api api, long calls) {
+        pipelineMetrics.timer(PipelineMetrics.Stage.COUNTER_UPDATE)
+                .record(() -> addPending(new CounterKey(userId, api.toString()), calls));
+    }
+
+    /**
+     * Adds to the key's adder under the map's lock for that key, so the increment cannot land
+     * on an adder that a flush is removing at the same time.
+     */
+    private void addPending(CounterKey key, long calls) {
+        pendingCalls.compute(key, (k, adder) -> {
+            LongAdder counter = adder != null ? adder : new LongAdder();
+            counter.add(calls);
+            return counter;
         });
+    }
 
-        // Increment
-        endpointCall.setCallCount(endpointCall.getCallCount() + 1);
-        endpointCallRepository.save(endpointCall);
+    /**
+     * Adds the pending counts to endpoint_call with one batched upsert.
+     * A row the database refuses on its own is dropped; counts that could not be written because the
+     * database was unreachable are put back and retried on the next flush.
+     * A counter with nothing to write is removed, so only users seen since the last flush are kept.
+     */
+    @Scheduled(fixedDelayString = "${endpoint-call.flush-interval-ms:5000}")
+    @PreDestroy
+    public synchronized void flushCallCounts() {
+        List<Map.Entry<CounterKey, Long>> counts = new ArrayList<>();
+        for (CounterKey key : pendingCalls.keySet()) {
+            pendingCalls.computeIfPresent(key, (k, adder) -> {
+                long calls = adder.sumThenReset();
+                if (calls == 0) {
+                    return null;
+                }
+                counts.add(Map.entry(k, calls));
+                return adder;
+            });
+        }
+        List<Map.Entry<CounterKey, Long>> unwritten =
+                jdbcBatchWriter.write(UPSERT_CALL_COUNT, counts, (ps, count) -> {
+                    ps.setLong(1, count.getKey().userId);
+                    ps.setString(2, count.getKey().endpointName);
+                    ps.setLong(3, count.getValue());
+                });
+        if (!unwritten.isEmpty()) {
+            log.error("Failed to flush {} call counter(s), retrying on next flush", unwritten.size());
+            unwritten.forEach(count -> addPending(count.getKey(), count.getValue()));
+        }
     }
 
-    public List<EndpointCall> getCallStats() {
+    /**
+     * Returns one keyset page of call statistics, optionally filtered by API.
+     * The cursor is the one returned with the previous page (null for the first page).
+     */
+    public CursorPage<EndpointCall> getCallStats(Api api, CallStatsSort sort, String cursor, int limit) {
+        String endpointName = api != null ? api.toString() : null;
+        List<EndpointCall> items;
+        if (sort == CallStatsSort.CALL_COUNT) {
+            long afterCount = Long.MAX_VALUE;
+            long afterId = Long.MAX_VALUE;
+            if (cursor != null) {
+                String[] parts = cursor.split(":", 2);
+                afterCount = parseCursor(parts[0]);
+                afterId = parts.length > 1 ? parseCursor(parts[1]) : Long.MAX_VALUE;
+            }
+            items = endpointCallRepository.findCallStatsByCallCount(endpointName, afterCount, afterId, Limit.of(limit));
+        } else {
+            long afterId = cursor != null ? parseCursor(cursor) : 0L;
+            items = endpointCallRepository.findCallStatsById(endpointName, afterId, Limit.of(limit));
+        }
+
+        String nextCursor = null;
+        if (items.size() == limit) {
+            EndpointCall last = items.get(items.size() - 1);
+            nextCursor = sort == CallStatsSort.CALL_COUNT
+                    ? last.getCallCount() + ":" + last.getId()
+                    : String.valueOf(last.getId());
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
 
-        List<EndpointCallEntity> endpointCallEntityList = endpointCallRepository.findAll();
+    /**
+     * Writes every call statistic (optionally filtered by API) as a JSON array,
+     * streaming rows from a database cursor so memory use stays constant.
+     */
+    @Transactional(readOnly = true)
+    public void exportCallStats(Api api, OutputStream out) throws IOException {
+        String endpointName = api != null ? api.toString() : null;
+        try (Stream<EndpointCall> calls = endpointCallRepository.streamCallStats(endpointName);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            Iterator<EndpointCall> iterator = calls.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+            }
+            generator.writeEndArray();
+        }
+    }
 
-        // Map each EndpointCallEntity to an EndpointCallDto
-        return endpointCallEntityList
-                .stream()
-                .map(entity ->
-                        new EndpointCall(
-                                entity.getUser().getEmail(),
-                                entity.getEndpointName(),
-                                entity.getCallCount()))
-                .toList();
+    private long parseCursor(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + value);
+        }
     }
 
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class CounterKey {
+        private final Long userId;
+        private final String endpointName;
+    }
 }
@@ -0,0 +1,75 @@
+package org.gait.database.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batched JDBC writes that survive bad rows.
+ * A batch is written in one transaction, so a refused batch leaves nothing behind. When the database refuses it
+ * because of some of its rows (constraint violations, invalid data), the rows are written one by one and only
+ * those refused on their own are dropped. Rows the database could not be reached for are handed back to the caller.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JdbcBatchWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Writes the rows and returns those left unwritten because of a connection-level failure, in order,
+     * for the caller to retry later.
+     */
+    public <T> List<T> write(String sql, List<T> rows, ParameterizedPreparedStatementSetter<T> setter) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(
+                    status -> jdbcTemplate.batchUpdate(sql, rows, rows.size(), setter));
+            return List.of();
+        } catch (RuntimeException e) {
+            if (isConnectionFailure(e)) {
+                log.warn("Could not write a batch of {} row(s): {}", rows.size(), e.getMessage());
+                return rows;
+            }
+            log.warn("Batch of {} row(s) refused, writing them one by one: {}", rows.size(), e.getMessage());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            T row = rows.get(i);
+            try {
+                jdbcTemplate.update(sql, ps -> setter.setValues(ps, row));
+            } catch (RuntimeException e) {
+                if (isConnectionFailure(e)) {
+                    log.warn("Could not write {} row(s): {}", rows.size() - i, e.getMessage());
+                    return new ArrayList<>(rows.subList(i, rows.size()));
+                }
+                log.error("Dropping a row refused by the database: {}", e.getMessage());
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Whether the failure says nothing about the rows themselves: lost connection, timeout, deadlock,
+     * a transaction that could not be started or committed.
+     */
+    private static boolean isConnectionFailure(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof TransactionException;
+    }
+}
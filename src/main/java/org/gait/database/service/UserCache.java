@@ -0,0 +1,56 @@
+package org.gait.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.gait.database.entity.UserEntity;
+import org.gait.database.repository.UserRepository;
+import org.gait.dto.CacheStats;
+import org.gait.service.CacheStatsProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bounded cache of users by email, for the few places that still need the entity.
+ * Unknown emails are not cached, and registration invalidates the email it saves,
+ * so a freshly registered user is found immediately.
+ * The app has no other path that changes a user; one that updates a role or password or
+ * deletes a user must call {@link #invalidate(String)}. Changes made outside the app
+ * (e.g. directly in Postgres) are picked up once the entry expires, after
+ * user-cache.expire-after-write-minutes.
+ */
+@Component
+public class UserCache implements CacheStatsProvider {
+
+    private final UserRepository userRepository;
+    private final Cache<String, UserEntity> users;
+
+    public UserCache(UserRepository userRepository,
+                     @Value("${user-cache.max-entries:10000}") long maxEntries,
+                     @Value("${user-cache.expire-after-write-minutes:5}") long expireAfterWriteMinutes) {
+        this.userRepository = userRepository;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                .recordStats()
+                .build();
+    }
+
+    public Optional<UserEntity> findByEmail(String email) {
+        // A null from the loader is not stored.
+        return Optional.ofNullable(users.get(email, key -> userRepository.findByEmail(key).orElse(null)));
+    }
+
+    public void invalidate(String email) {
+        users.invalidate(email);
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = users.stats();
+        return new CacheStats("user", users.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+}
@@ -2,7 +2,6 @@ package org.gait.database.service;
 
 import lombok.RequiredArgsConstructor;
 import org.gait.database.entity.UserEntity;
-import org.gait.database.repository.UserRepository;
 import org.gait.security.UserDetailsImpl;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
@@ -11,14 +10,17 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class UserService {
 
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
+    /**
+     * Only needed when the full entity is required; the principal already carries id, email and role.
+     */
     public UserEntity getUserEntity(Authentication authentication) {
         // 2) The 'Authentication' object has principal = our user details
         UserDetailsImpl principal = (UserDetailsImpl) authentication.getPrincipal();
 
-        // 3) Find the user in DB (assuming the principal's email is the "username")
-        return userRepository.findByEmail(principal.getUsername())
+        // 3) Find the user through the cache (assuming the principal's email is the "username")
+        return userCache.findByEmail(principal.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 }
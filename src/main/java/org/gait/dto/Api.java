@@ -2,5 +2,17 @@
 
     public enum Api {
         GITHUB,
-        COUNTRIES
+        COUNTRIES;
+
+        /**
+         * Resolves an API from its case-insensitive name (e.g. "github"), or null if unknown.
+         */
+        public static Api fromName(String name) {
+            for (Api api : values()) {
+                if (api.name().equalsIgnoreCase(name)) {
+                    return api;
+                }
+            }
+            return null;
+        }
     }
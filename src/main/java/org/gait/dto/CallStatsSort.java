@@ -0,0 +1,6 @@
+package org.gait.dto;
+
+public enum CallStatsSort {
+    ID,
+    CALL_COUNT
+}
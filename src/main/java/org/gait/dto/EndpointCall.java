@@ -1,13 +1,17 @@
 package org.gait.dto;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
 @AllArgsConstructor
 public class EndpointCall {
+    // Row id, only used to build keyset cursors.
+    @JsonIgnore
+    private Long id;
     private String userEmail;
     private String endpointName;
     private Long callCount;
-}
\ No newline at end of file
+}
@@ -1,13 +1,18 @@
 package org.gait.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,6 +25,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtils jwtUtils;
     private final UserDetailsServiceImpl userDetailsService;
+    private final SecurityContextRepository securityContextRepository = new RequestAttributeSecurityContextRepository();
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -30,10 +36,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String token = parseToken(request);
 
-            if (token != null && jwtUtils.validateToken(token)) {
-                String email = jwtUtils.getUsernameFromToken(token);
+            if (token != null) {
+                Claims claims = jwtUtils.verify(token);
 
-                var userDetails = userDetailsService.loadUserByUsername(email);
+                // Id and role come from the token; only older tokens without them need a lookup
+                UserDetails userDetails = jwtUtils.getPrincipal(claims);
+                if (userDetails == null) {
+                    userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+                }
                 var authToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -44,7 +54,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 );
 
                 // Set authentication to SecurityContext
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+                SecurityContext context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(authToken);
+                SecurityContextHolder.setContext(context);
+                // Also kept on the request: this filter skips the async dispatch that writes a deferred
+                // result, and that dispatch is authorized from the saved context
+                securityContextRepository.saveContext(context, request, response);
             }
         } catch (Exception ex) {
             // Token invalid or other error -> no authentication set
@@ -1,20 +1,37 @@
 package org.gait.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.gait.dto.CacheStats;
+import org.gait.dto.RoleName;
+import org.gait.service.CacheStatsProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simplified JWT utility class for generating & validating tokens.
+ * Verified tokens are cached (by SHA-256 of the token, until they expire),
+ * so a token seen again skips the signature check and the JSON decoding.
  */
 @Component
 @RequiredArgsConstructor
-public class JwtUtils {
+public class JwtUtils implements CacheStatsProvider {
+
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
 
     @Value("${jwt.secret}")
     private String jwtSecret;  // e.g. a 256-bit secret
@@ -22,47 +39,109 @@ public class JwtUtils {
     @Value("${jwt.expiration-ms}")
     private Long jwtExpirationMs; // e.g. 86400000 (1 day)
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    @Value("${jwt.verified-cache.max-entries:10000}")
+    private long verifiedCacheMaxEntries;
+
+    private Key signingKey;
+    private JwtParser parser;
+    private Cache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        // Key and parser are immutable and thread-safe: build them once
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxEntries)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
     }
 
     /**
-     * Generate JWT from a user email.
+     * Generate JWT for an authenticated user.
+     * The user id and role are embedded so requests can be authenticated without a database lookup.
      */
-    public String generateToken(String email) {
+    public String generateToken(UserDetailsImpl user) {
         Date now = new Date();
         Date expiry = new Date(now.getTime() + jwtExpirationMs);
 
         return Jwts.builder()
-                .setSubject(email)
+                .setSubject(user.getEmail())
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_ROLE, user.getRole().name())
                 .setIssuedAt(now)
                 .setExpiration(expiry)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     /**
-     * Validate the token’s signature and expiration.
+     * Validate the token's signature and expiration and return its claims, in a single parse.
+     * @throws JwtException if the token is malformed, badly signed or expired
+     */
+    public Claims verify(String token) {
+        String tokenHash = sha256(token);
+        Claims cached = verifiedTokens.getIfPresent(tokenHash);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        // Tokens without an expiration are not cached: the cache must never outlive a token
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(tokenHash, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * Build the principal from the token's claims,
+     * or return null for tokens issued before the id and role claims existed.
      */
-    public boolean validateToken(String token) {
+    public UserDetailsImpl getPrincipal(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (userId == null || role == null) {
+            return null;
+        }
+        return UserDetailsImpl.fromClaims(userId.longValue(), claims.getSubject(), RoleName.valueOf(role));
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = verifiedTokens.stats();
+        return new CacheStats("verified-token", verifiedTokens.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+    private static String sha256(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token);
-            return true;
-        } catch (JwtException e) {
-            // Malformed, expired, etc.
-            return false;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
     /**
-     * Extract email (subject) from JWT.
+     * A verified token stays cached until its own expiration, never longer.
      */
-    public String getUsernameFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+    private static class TokenExpiry implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            long remainingMs = claims.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, remainingMs));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
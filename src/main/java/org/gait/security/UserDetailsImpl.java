@@ -2,6 +2,7 @@ package org.gait.security;
 
 import lombok.*;
 import org.gait.database.entity.UserEntity;
+import org.gait.dto.RoleName;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -37,6 +38,21 @@ public class UserDetailsImpl implements UserDetails {
         );
     }
 
+    /**
+     * Static factory: build UserDetailsImpl from verified JWT claims, without a database lookup.
+     * There is no password: such a principal can only come from an already-authenticated token.
+     */
+    public static UserDetailsImpl fromClaims(Long id, String email, RoleName role) {
+        return new UserDetailsImpl(id, email, null, new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    /**
+     * The role name, without the "ROLE_" prefix.
+     */
+    public RoleName getRole() {
+        return RoleName.valueOf(authority.getAuthority().substring("ROLE_".length()));
+    }
+
     @Override
     public String getUsername() {
         // "username" in Spring Security terms → we use the email field
@@ -1,116 +1,441 @@
 package org.gait.service;
 
-import org.apache.jena.query.*;
-import org.apache.jena.sparql.exec.http.QueryExecutionHTTP;
-import org.apache.jena.sparql.exec.http.QuerySendMode;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateFactory;
-import org.apache.jena.update.UpdateProcessor;
-import org.apache.jena.update.UpdateRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.gait.dto.Api;
 import org.gait.vocabulary.CacheOntology;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Blazegraph-backed (L2) cache in two levels:
+ * query results keyed by (api, GraphQL query hash) hold the payload,
+ * and prompt entries keyed by the prompt hash only point at a result.
+ * A periodic maintenance pass purges expired entries and keeps the store within
+ * its configured capacity by evicting the least recently accessed results.
+ * Reads are bounded by cache.read-budget-ms and turn into misses when Blazegraph is slow or
+ * unavailable, so the cache never holds a request longer than that.
+ */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class BlazegraphCacheService {
 
-    @Value("${blazegraph.endpoint:http://localhost:9999/blazegraph/namespace/kb/sparql}")
-    private String blazegraphEndpoint;
+    private final BlazegraphWriteBehind writeBehind;
+    private final PayloadCodec payloadCodec;
+    private final BlazegraphClient blazegraphClient;
+
+    @Value("${cache.read-budget-ms:150}")
+    private long readBudgetMs;
+
+    @Value("${cache.maintenance-budget-ms:30000}")
+    private long maintenanceBudgetMs;
+
+    // How long a cache entry stays valid after its creation.
+    @Value("${cache.expiration.minutes:10}")
+    private long expirationMinutes;
+
+    // How long an entry is still served (stale, while it is refreshed) after its TTL.
+    @Value("${cache.stale-grace.minutes:5}")
+    private long staleGraceMinutes;
+
+    @Value("${cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    // Result or prompt URI -> last read time, flushed to Blazegraph by the maintenance pass.
+    private final Map<String, Instant> pendingAccesses = new ConcurrentHashMap<>();
+
+    private static final String PROMPT_URI_PREFIX = "urn:prompt:sha256:";
 
     // Prefixes for our cache ontology and XSD.
     private static final String PREFIXES = "PREFIX cache: <" + CacheOntology.NS + "> " +
             "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
 
     /**
-     * Generates a unique URI for a given prompt.
-     * (In production, consider using a cryptographic hash.)
+     * Generates the URI of a cache entry from its content-addressed key (see {@link CacheKeys}),
+     * so the subject has the same length whatever the prompt length.
      */
-    public String generatePromptURI(String prompt) {
-        return "urn:prompt:" + URLEncoder.encode(prompt, StandardCharsets.UTF_8);
+    public String generatePromptURI(String key) {
+        return PROMPT_URI_PREFIX + key;
     }
 
     /**
-     * Sanitizes the input by escaping double quotes and removing newlines.
+     * Generates the URI of a shared query result from its query key (see {@link CacheKeys#queryKey}).
+     */
+    public String generateResultURI(String queryKey) {
+        return "urn:result:sha256:" + queryKey;
+    }
+
+    /**
+     * Sanitizes the input by escaping backslashes and double quotes and removing newlines.
      */
     private String sanitize(String input) {
         if (input == null) return "";
-        return input.replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
+        return input.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
     }
 
     /**
-     * Saves a cache entry with the user prompt, the final GraphQL result, and the creation timestamp.
+     * Saves a fresh upstream result under the query key and points the prompt entry at it.
+     * Any previous (expired) version of either node is replaced. The write is queued behind the request.
      */
-    public void saveCacheEntry(String prompt, String graphQLResult) {
-        String promptURI = generatePromptURI(prompt);
-        String safePrompt = sanitize(prompt);
-        String safeGraphQLResult = sanitize(graphQLResult);
-        String timestamp = Instant.now().toString();  // ISO-8601
+    public void saveCacheEntry(String key, String queryKey, Api api, CachedEntry entry) {
+        String promptURI = generatePromptURI(key);
+        String resultURI = generateResultURI(queryKey);
+        PayloadCodec.Encoded payload = payloadCodec.encode(entry.graphQLResult);
+        String payloadLiteral = PayloadCodec.DEFLATE.equals(payload.codec)
+                ? "\"" + payload.value + "\"^^xsd:base64Binary"
+                : "\"" + sanitize(payload.value) + "\"";
         String updateString = PREFIXES +
+                "DELETE WHERE { <" + resultURI + "> ?p ?o . } ; " +
+                "DELETE WHERE { <" + promptURI + "> ?p ?o . } ; " +
                 "INSERT DATA { " +
-                "  <" + promptURI + "> a <" + CacheOntology.CachedEntry + "> ; " +
-                "    <" + CacheOntology.originalPrompt + "> \"" + safePrompt + "\" ; " +
-                "    <" + CacheOntology.hasGraphQLResult + "> \"" + safeGraphQLResult + "\" ; " +
-                "    <" + CacheOntology.createdAt + "> \"" + timestamp + "\"^^xsd:dateTime ." +
+                "  <" + resultURI + "> a <" + CacheOntology.CachedResult + "> ; " +
+                "    <" + CacheOntology.api + "> \"" + api.name() + "\" ; " +
+                "    <" + CacheOntology.hasGraphQLResult + "> " + payloadLiteral + " ; " +
+                "    <" + CacheOntology.codec + "> \"" + payload.codec + "\" ; " +
+                "    <" + CacheOntology.payloadSize + "> " + payload.value.length() + " ; " +
+                "    <" + CacheOntology.createdAt + "> \"" + entry.createdAt + "\"^^xsd:dateTime ; " +
+                "    <" + CacheOntology.lastAccessedAt + "> \"" + entry.createdAt + "\"^^xsd:dateTime . " +
+                promptTriples(promptURI, resultURI, entry) +
                 "}";
-        UpdateRequest updateRequest = UpdateFactory.create(updateString);
-        UpdateProcessor processor = UpdateExecutionFactory.createRemoteForm(updateRequest, blazegraphEndpoint);
-        processor.execute();
+        writeBehind.submit(updateString);
     }
 
     /**
-     * Retrieves the cached entry for the given prompt.
-     * If the entry is older than 10 minutes, it is deleted and null is returned.
+     * Points a prompt entry at an already cached result, without copying the payload.
      */
-    public CachedEntry fetchCacheEntry(String prompt) {
-        String promptURI = generatePromptURI(prompt);
+    public void linkCacheEntry(String key, String queryKey, CachedEntry entry) {
+        String promptURI = generatePromptURI(key);
+        String updateString = PREFIXES +
+                "DELETE WHERE { <" + promptURI + "> ?p ?o . } ; " +
+                "INSERT DATA { " +
+                promptTriples(promptURI, generateResultURI(queryKey), entry) +
+                "}";
+        writeBehind.submit(updateString);
+    }
+
+    private String promptTriples(String promptURI, String resultURI, CachedEntry entry) {
+        return "  <" + promptURI + "> a <" + CacheOntology.CachedEntry + "> ; " +
+                "    <" + CacheOntology.originalPrompt + "> \"" + sanitize(entry.prompt) + "\" ; " +
+                "    <" + CacheOntology.hasResult + "> <" + resultURI + "> ; " +
+                "    <" + CacheOntology.createdAt + "> \"" + Instant.now() + "\"^^xsd:dateTime . ";
+    }
+
+    /**
+     * Records a read of the prompt entry served by a tier above this one, so the result it points at
+     * counts as recently used when capacity is enforced.
+     */
+    public void touch(String key) {
+        pendingAccesses.put(generatePromptURI(key), Instant.now());
+    }
+
+    /**
+     * Records a read of the result served by a tier above this one (see {@link #touch}).
+     */
+    public void touchResult(String queryKey) {
+        pendingAccesses.put(generateResultURI(queryKey), Instant.now());
+    }
+
+    /**
+     * Retrieves the cached entry for the given prompt key through the result it points at.
+     * If the result has expired, the prompt entry is deleted and null is returned.
+     */
+    public CachedEntry fetchCacheEntry(String key) {
+        String promptURI = generatePromptURI(key);
         String queryString = PREFIXES +
-                "SELECT ?graphQLResult ?createdAt WHERE { " +
+                "SELECT ?prompt ?result ?graphQLResult ?codec ?createdAt WHERE { " +
                 "  <" + promptURI + "> a <" + CacheOntology.CachedEntry + "> ; " +
+                "    <" + CacheOntology.originalPrompt + "> ?prompt ; " +
+                "    <" + CacheOntology.hasResult + "> ?result . " +
+                "  ?result <" + CacheOntology.hasGraphQLResult + "> ?graphQLResult ; " +
+                "    <" + CacheOntology.createdAt + "> ?createdAt ." +
+                "  OPTIONAL { ?result <" + CacheOntology.codec + "> ?codec } " +
+                "}";
+        QuerySolution sol = readOne(queryString);
+        if (sol == null) {
+            return null;
+        }
+        String createdAtStr = sol.getLiteral("createdAt").getString();
+        if (isExpired(Instant.parse(createdAtStr))) {
+            removeCacheEntry(key);
+            return null;
+        }
+        pendingAccesses.put(sol.getResource("result").getURI(), Instant.now());
+        return new CachedEntry(sol.getLiteral("prompt").getString(),
+                decodePayload(sol), createdAtStr);
+    }
+
+    /**
+     * Bulk variant of {@link #fetchCacheEntry}: resolves all keys with a single VALUES query.
+     * Returns the valid entries by key; missing and expired keys are absent from the map.
+     */
+    public Map<String, CachedEntry> fetchCacheEntries(Collection<String> keys) {
+        Map<String, CachedEntry> entries = new HashMap<>();
+        if (keys.isEmpty()) {
+            return entries;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String key : keys) {
+            values.append("<").append(generatePromptURI(key)).append("> ");
+        }
+        String queryString = PREFIXES +
+                "SELECT ?entry ?prompt ?result ?graphQLResult ?codec ?createdAt WHERE { " +
+                "  VALUES ?entry { " + values + "} " +
+                "  ?entry a <" + CacheOntology.CachedEntry + "> ; " +
+                "    <" + CacheOntology.originalPrompt + "> ?prompt ; " +
+                "    <" + CacheOntology.hasResult + "> ?result . " +
+                "  ?result <" + CacheOntology.hasGraphQLResult + "> ?graphQLResult ; " +
+                "    <" + CacheOntology.createdAt + "> ?createdAt ." +
+                "  OPTIONAL { ?result <" + CacheOntology.codec + "> ?codec } " +
+                "}";
+        ResultSet results;
+        try {
+            results = blazegraphClient.select(queryString, Duration.ofMillis(readBudgetMs));
+        } catch (ResponseStatusException e) {
+            log.debug("Blazegraph cache read skipped: {}", e.getReason());
+            return entries;
+        }
+        while (results.hasNext()) {
+            QuerySolution sol = results.nextSolution();
+            String key = sol.getResource("entry").getURI().substring(PROMPT_URI_PREFIX.length());
+            String createdAtStr = sol.getLiteral("createdAt").getString();
+            if (isExpired(Instant.parse(createdAtStr))) {
+                removeCacheEntry(key);
+                continue;
+            }
+            pendingAccesses.put(sol.getResource("result").getURI(), Instant.now());
+            entries.put(key, new CachedEntry(sol.getLiteral("prompt").getString(),
+                    decodePayload(sol), createdAtStr));
+        }
+        return entries;
+    }
+
+    /**
+     * Retrieves the cached result for the given query key (the entry has no prompt).
+     * If the result has expired, it is deleted and null is returned.
+     */
+    public CachedEntry fetchResult(String queryKey) {
+        String resultURI = generateResultURI(queryKey);
+        String queryString = PREFIXES +
+                "SELECT ?graphQLResult ?codec ?createdAt WHERE { " +
+                "  <" + resultURI + "> a <" + CacheOntology.CachedResult + "> ; " +
                 "    <" + CacheOntology.hasGraphQLResult + "> ?graphQLResult ; " +
                 "    <" + CacheOntology.createdAt + "> ?createdAt ." +
+                "  OPTIONAL { <" + resultURI + "> <" + CacheOntology.codec + "> ?codec } " +
                 "}";
-        Query query = QueryFactory.create(queryString);
-        try (QueryExecution qexec = QueryExecutionHTTP.newBuilder()
-                .endpoint(blazegraphEndpoint)
-                .query(query)
-                .sendMode(QuerySendMode.asPost)
-                .build()) {
-            ResultSet results = qexec.execSelect();
-            if (results.hasNext()) {
-                QuerySolution sol = results.nextSolution();
-                String graphQLResult = sol.getLiteral("graphQLResult").getString();
-                String createdAtStr = sol.getLiteral("createdAt").getString();
-                Instant createdAt = Instant.parse(createdAtStr);
-                // Expire after 10 minutes.
-                if (Duration.between(createdAt, Instant.now()).toMinutes() >= 10) {
-                    removeCacheEntry(prompt);
-                    return null;
-                }
-                return new CachedEntry(prompt, graphQLResult, createdAtStr);
+        QuerySolution sol = readOne(queryString);
+        if (sol == null) {
+            return null;
+        }
+        String createdAtStr = sol.getLiteral("createdAt").getString();
+        if (isExpired(Instant.parse(createdAtStr))) {
+            removeResult(queryKey);
+            return null;
+        }
+        pendingAccesses.put(resultURI, Instant.now());
+        return new CachedEntry(null, decodePayload(sol), createdAtStr);
+    }
+
+    /**
+     * Reads the stored result back into the original JSON, whatever its codec.
+     */
+    private String decodePayload(QuerySolution sol) {
+        String codec = sol.contains("codec") ? sol.getLiteral("codec").getString() : null;
+        return payloadCodec.decode(codec, sol.getLiteral("graphQLResult").getLexicalForm());
+    }
+
+    /**
+     * How long a cache entry stays valid after its creation (cache.expiration.minutes).
+     */
+    public Duration getEntryTtl() {
+        return Duration.ofMinutes(expirationMinutes);
+    }
+
+    /**
+     * How long an entry is kept after its creation: the TTL plus the stale grace window.
+     */
+    public Duration getRetention() {
+        return getEntryTtl().plusMinutes(staleGraceMinutes);
+    }
+
+    /**
+     * Returns whether an entry created at the given instant has outlived the entry TTL
+     * and the stale grace window, i.e. can no longer be served at all.
+     */
+    public boolean isExpired(Instant createdAt) {
+        return !Instant.now().isBefore(createdAt.plus(getRetention()));
+    }
+
+    /**
+     * Returns whether an entry created at the given instant has outlived the entry TTL:
+     * it may still be served within the grace window, but should be refreshed.
+     */
+    public boolean isStale(Instant createdAt) {
+        return !Instant.now().isBefore(createdAt.plus(getEntryTtl()));
+    }
+
+    /**
+     * Deletes the cache entry for the given prompt key (the shared result is kept).
+     */
+    public void removeCacheEntry(String key) {
+        writeBehind.submit(PREFIXES + "DELETE WHERE { <" + generatePromptURI(key) + "> ?p ?o . }");
+    }
+
+    /**
+     * Deletes the shared result for the given query key.
+     */
+    public void removeResult(String queryKey) {
+        writeBehind.submit(PREFIXES + "DELETE WHERE { <" + generateResultURI(queryKey) + "> ?p ?o . }");
+    }
+
+    /**
+     * Periodic maintenance: records last-access times, purges expired results,
+     * evicts the least recently accessed results beyond capacity and drops prompt entries left dangling.
+     * Skipped while the Blazegraph circuit is open.
+     */
+    @Scheduled(fixedDelayString = "${cache.maintenance-interval-ms:60000}",
+            initialDelayString = "${cache.maintenance-interval-ms:60000}")
+    public void maintain() {
+        if (!blazegraphClient.isAvailable()) {
+            return;
+        }
+        try {
+            flushAccesses();
+            purgeExpired();
+            enforceCapacity();
+            purgeDanglingEntries();
+        } catch (Exception e) {
+            log.warn("Blazegraph cache maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private void flushAccesses() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String uri : new ArrayList<>(pendingAccesses.keySet())) {
+            Instant accessedAt = pendingAccesses.remove(uri);
+            if (accessedAt != null) {
+                values.append("(<").append(uri).append("> \"").append(accessedAt).append("\"^^xsd:dateTime) ");
             }
         }
-        return null;
+        // A prompt URI stands for the result it points at (zero-or-one hasResult step);
+        // the latest access wins when several of them land on the same result.
+        execute(PREFIXES +
+                "DELETE { ?result <" + CacheOntology.lastAccessedAt + "> ?old } " +
+                "INSERT { ?result <" + CacheOntology.lastAccessedAt + "> ?accessedAt } " +
+                "WHERE { " +
+                "  { SELECT ?result (MAX(?at) AS ?accessedAt) WHERE { " +
+                "      VALUES (?node ?at) { " + values + "} " +
+                "      ?node <" + CacheOntology.hasResult + ">? ?result . " +
+                "    } GROUP BY ?result } " +
+                "  ?result a <" + CacheOntology.CachedResult + "> . " +
+                "  OPTIONAL { ?result <" + CacheOntology.lastAccessedAt + "> ?old } " +
+                "}");
+    }
+
+    private void purgeExpired() {
+        String cutoff = Instant.now().minus(getRetention()).toString();
+        execute(PREFIXES +
+                "DELETE { ?result ?p ?o } WHERE { " +
+                "  ?result a <" + CacheOntology.CachedResult + "> ; " +
+                "    <" + CacheOntology.createdAt + "> ?createdAt . " +
+                "  FILTER(?createdAt <= \"" + cutoff + "\"^^xsd:dateTime) " +
+                "  ?result ?p ?o . " +
+                "}");
+    }
+
+    private void enforceCapacity() {
+        ResultSet totalsResult = blazegraphClient.select(PREFIXES +
+                "SELECT (COUNT(?result) AS ?entries) (SUM(?size) AS ?bytes) WHERE { " +
+                "  ?result a <" + CacheOntology.CachedResult + "> ; " +
+                "    <" + CacheOntology.payloadSize + "> ?size . " +
+                "}", Duration.ofMillis(maintenanceBudgetMs));
+        QuerySolution totals = totalsResult.hasNext() ? totalsResult.nextSolution() : null;
+        long entries = totals != null && totals.contains("entries") ? totals.getLiteral("entries").getLong() : 0L;
+        long bytes = totals != null && totals.contains("bytes") ? totals.getLiteral("bytes").getLong() : 0L;
+        if (entries <= maxEntries && bytes <= maxBytes) {
+            return;
+        }
+
+        // Walk the results from least to most recently accessed until the store fits again.
+        List<String> victims = new ArrayList<>();
+        ResultSet results = blazegraphClient.select(PREFIXES +
+                "SELECT ?result ?size WHERE { " +
+                "  ?result a <" + CacheOntology.CachedResult + "> ; " +
+                "    <" + CacheOntology.payloadSize + "> ?size ; " +
+                "    <" + CacheOntology.lastAccessedAt + "> ?lastAccessedAt . " +
+                "} ORDER BY ASC(?lastAccessedAt)", Duration.ofMillis(maintenanceBudgetMs));
+        while (results.hasNext() && (entries > maxEntries || bytes > maxBytes)) {
+            QuerySolution sol = results.nextSolution();
+            victims.add(sol.getResource("result").getURI());
+            entries--;
+            bytes -= sol.getLiteral("size").getLong();
+        }
+        if (victims.isEmpty()) {
+            return;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String victim : victims) {
+            values.append("<").append(victim).append("> ");
+        }
+        execute(PREFIXES +
+                "DELETE { ?result ?p ?o } WHERE { " +
+                "  VALUES ?result { " + values + "} " +
+                "  ?result ?p ?o . " +
+                "}");
+        log.info("Evicted {} least recently used cache results from Blazegraph", victims.size());
+    }
+
+    private void purgeDanglingEntries() {
+        execute(PREFIXES +
+                "DELETE { ?entry ?p ?o } WHERE { " +
+                "  ?entry a <" + CacheOntology.CachedEntry + "> . " +
+                "  FILTER NOT EXISTS { " +
+                "    ?entry <" + CacheOntology.hasResult + "> ?result . " +
+                "    ?result a <" + CacheOntology.CachedResult + "> . " +
+                "  } " +
+                "  ?entry ?p ?o . " +
+                "}");
     }
 
     /**
-     * Deletes the cache entry for the given prompt.
+     * Returns the first solution of a cache read, or null when there is none or
+     * Blazegraph did not answer within the read budget.
      */
-    public void removeCacheEntry(String prompt) {
-        String promptURI = generatePromptURI(prompt);
-        String updateString = PREFIXES +
-                "DELETE WHERE { <" + promptURI + "> ?p ?o . }";
-        UpdateRequest updateRequest = UpdateFactory.create(updateString);
-        UpdateProcessor processor = UpdateExecutionFactory.createRemoteForm(updateRequest, blazegraphEndpoint);
-        processor.execute();
+    private QuerySolution readOne(String queryString) {
+        try {
+            ResultSet results = blazegraphClient.select(queryString, Duration.ofMillis(readBudgetMs));
+            return results.hasNext() ? results.nextSolution() : null;
+        } catch (ResponseStatusException e) {
+            log.debug("Blazegraph cache read skipped: {}", e.getReason());
+            return null;
+        }
+    }
+
+    private void execute(String updateString) {
+        blazegraphClient.update(updateString, Duration.ofMillis(maintenanceBudgetMs));
     }
 
     /**
-     * DTO for a cached entry.
+     * DTO for a cached entry. The prompt is null for entries fetched by query key.
      */
     public static class CachedEntry {
         public final String prompt;
@@ -0,0 +1,213 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QueryParseException;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.jena.sparql.exec.http.QueryExecutionHTTP;
+import org.apache.jena.sparql.exec.http.QuerySendMode;
+import org.apache.jena.update.UpdateFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * All SPARQL traffic to Blazegraph, each call bounded by the latency budget of its operation
+ * and guarded by a circuit breaker.
+ * After failureThreshold consecutive failures (5xx answers, IO errors or blown budgets) the circuit opens:
+ * calls are rejected immediately with 503 until a background probe finds Blazegraph healthy again.
+ * Callers decide what a rejection means: cache reads become misses, writes are deferred.
+ * A request Blazegraph refuses (4xx, or SPARQL that does not parse) fails with that 4xx status and
+ * does not count against the circuit: Blazegraph is healthy, the request is wrong.
+ */
+@Component
+@Slf4j
+public class BlazegraphClient {
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final Duration probeBudget;
+    private final HttpClient httpClient;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile boolean open;
+    private final Counter rejectedCalls;
+
+    public BlazegraphClient(
+            @Value("${blazegraph.endpoint:http://localhost:9999/blazegraph/namespace/kb/sparql}") String endpoint,
+            @Value("${blazegraph.connect-timeout-ms:1000}") long connectTimeoutMs,
+            @Value("${blazegraph.circuit.failure-threshold:5}") int failureThreshold,
+            @Value("${blazegraph.circuit.probe-budget-ms:1000}") long probeBudgetMs,
+            MeterRegistry meterRegistry) {
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.probeBudget = Duration.ofMillis(probeBudgetMs);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        Gauge.builder("gait.blazegraph.circuit.open", this, client -> client.open ? 1 : 0)
+                .register(meterRegistry);
+        this.rejectedCalls = Counter.builder("gait.blazegraph.rejected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether calls are currently let through (the circuit is closed).
+     */
+    public boolean isAvailable() {
+        return !open;
+    }
+
+    /**
+     * Runs a SELECT query and returns its fully read results.
+     * Throws a 503 {@link ResponseStatusException} when the circuit is open or the call fails or exceeds the budget,
+     * and a 4xx one when the query is rejected.
+     */
+    public ResultSetRewindable select(String queryString, Duration budget) {
+        // Parsed up front: a malformed query is our bug, not a sign of a degraded Blazegraph.
+        Query query;
+        try {
+            query = QueryFactory.create(queryString);
+        } catch (QueryParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid SPARQL query: " + e.getMessage(), e);
+        }
+        return call(() -> {
+            try (QueryExecution qexec = QueryExecutionHTTP.newBuilder()
+                    .httpClient(httpClient)
+                    .endpoint(endpoint)
+                    .query(query)
+                    .sendMode(QuerySendMode.asPost)
+                    .timeout(budget.toMillis(), TimeUnit.MILLISECONDS)
+                    .build()) {
+                return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+        });
+    }
+
+    /**
+     * Runs a SPARQL update, with the same failure semantics as {@link #select}.
+     */
+    public void update(String updateString, Duration budget) {
+        try {
+            UpdateFactory.create(updateString);
+        } catch (QueryParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid SPARQL update: " + e.getMessage(), e);
+        }
+        call(() -> {
+            send(updateString, budget);
+            return null;
+        });
+    }
+
+    private void send(String updateString, Duration budget) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+                .timeout(budget)
+                .header("Content-Type", "application/sparql-update; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(updateString, StandardCharsets.UTF_8))
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 == 4) {
+                throw new ResponseStatusException(HttpStatusCode.valueOf(response.statusCode()),
+                        "Blazegraph rejected the update: " + response.body());
+            }
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("Blazegraph update answered " + response.statusCode());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while updating Blazegraph", e);
+        }
+    }
+
+    private <T> T call(Supplier<T> operation) {
+        if (open) {
+            rejectedCalls.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Blazegraph is unavailable");
+        }
+        try {
+            T result = operation.get();
+            consecutiveFailures.set(0);
+            return result;
+        } catch (RuntimeException e) {
+            int rejectedStatus = rejectedStatus(e);
+            if (rejectedStatus != 0) {
+                // Blazegraph answered: it is up, the request is at fault.
+                consecutiveFailures.set(0);
+                throw e instanceof ResponseStatusException statusException ? statusException
+                        : new ResponseStatusException(HttpStatusCode.valueOf(rejectedStatus),
+                        "Blazegraph rejected the request: " + e.getMessage(), e);
+            }
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && !open) {
+                open = true;
+                log.warn("Blazegraph circuit opened after {} consecutive failures: {}", failureThreshold, e.getMessage());
+            }
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Blazegraph call failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The 4xx status of a request Blazegraph refused, or 0 for any other failure.
+     */
+    private static int rejectedStatus(RuntimeException e) {
+        int status = 0;
+        if (e instanceof ResponseStatusException statusException) {
+            status = statusException.getStatusCode().value();
+        } else if (e instanceof QueryExceptionHTTP queryException) {
+            status = queryException.getStatusCode();
+        } else if (e instanceof HttpException httpException) {
+            status = httpException.getStatusCode();
+        }
+        return status / 100 == 4 ? status : 0;
+    }
+
+    /**
+     * While the circuit is open, checks with a trivial query whether Blazegraph answers
+     * within the probe budget again, and closes the circuit if so.
+     */
+    @Scheduled(fixedDelayString = "${blazegraph.circuit.probe-interval-ms:5000}")
+    public void probe() {
+        if (!open) {
+            return;
+        }
+        try (QueryExecution qexec = QueryExecutionHTTP.newBuilder()
+                .httpClient(httpClient)
+                .endpoint(endpoint)
+                .query("ASK {}")
+                .timeout(probeBudget.toMillis(), TimeUnit.MILLISECONDS)
+                .build()) {
+            qexec.execAsk();
+            consecutiveFailures.set(0);
+            open = false;
+            log.info("Blazegraph circuit closed, probe succeeded");
+        } catch (RuntimeException e) {
+            log.debug("Blazegraph probe failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.gait.service;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.gait.dto.Api;
+import org.gait.dto.CursorPage;
+import org.gait.service.UserHistoryService.PopularPrompt;
+import org.gait.service.UserHistoryService.UserHistoryEntry;
+import org.gait.vocabulary.UserHistoryOntology;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * History kept in Blazegraph as uh:UserHistory resources (history.store=blazegraph, the default).
+ * Writes go through the shared Blazegraph write-behind queue.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "history.store", havingValue = "blazegraph", matchIfMissing = true)
+public class BlazegraphHistoryStore implements HistoryStore {
+
+    private final BlazegraphWriteBehind writeBehind;
+    private final BlazegraphClient blazegraphClient;
+
+    @Value("${history.read-budget-ms:2000}")
+    private long readBudgetMs;
+
+    // Prefixes for our user history ontology and XSD.
+    private static final String PREFIXES = "PREFIX uh: <" + UserHistoryOntology.NS + "> " +
+            "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
+
+    /**
+     * Generates a unique URI for a history record, so repeated prompts are kept as separate records.
+     */
+    public String generateHistoryURI(String userId) {
+        return "urn:userhistory:" + URLEncoder.encode(userId, StandardCharsets.UTF_8) + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Sanitizes input by escaping backslashes and double quotes and removing newlines.
+     */
+    private String sanitize(String input) {
+        if (input == null) return "";
+        return input.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
+    }
+
+    /**
+     * Saves the records with a single INSERT DATA.
+     */
+    @Override
+    public void save(String userId, Api api, List<String> prompts) {
+        String safeUserId = sanitize(userId);
+        String timestamp = Instant.now().toString(); // ISO-8601 format
+
+        StringBuilder triples = new StringBuilder();
+        for (String prompt : prompts) {
+            String historyURI = generateHistoryURI(userId);
+            String safePrompt = sanitize(prompt);
+            triples.append("  <").append(historyURI).append("> a <").append(UserHistoryOntology.UserHistory).append("> ; ")
+                    .append("    <").append(UserHistoryOntology.userId).append("> \"").append(safeUserId).append("\" ; ")
+                    .append("    <").append(UserHistoryOntology.prompt).append("> \"").append(safePrompt).append("\" ; ")
+                    .append("    <").append(UserHistoryOntology.api).append("> \"").append(api.name()).append("\" ; ")
+                    .append("    <").append(UserHistoryOntology.createdAt).append("> \"").append(timestamp)
+                    .append("\"^^xsd:dateTime . ");
+        }
+        String updateString = PREFIXES +
+                "INSERT DATA { " + triples + "}";
+        writeBehind.submit(updateString);
+    }
+
+    /**
+     * The user id is bound in the triple pattern (not filtered), so only that user's records are read.
+     * The cursor is the one returned with the previous page (null for the first page).
+     * Answers 503 when Blazegraph is unavailable or exceeds history.read-budget-ms.
+     */
+    @Override
+    public CursorPage<UserHistoryEntry> find(String userId, Instant from, Instant to, String cursor, int limit) {
+        String safeUserId = sanitize(userId);
+        StringBuilder filters = new StringBuilder();
+        if (from != null) {
+            filters.append("  FILTER(?createdAt >= \"").append(from).append("\"^^xsd:dateTime) ");
+        }
+        if (to != null) {
+            filters.append("  FILTER(?createdAt < \"").append(to).append("\"^^xsd:dateTime) ");
+        }
+        if (cursor != null) {
+            HistoryCursor after = HistoryCursor.decode(cursor);
+            // Strictly after the last record of the previous page, in (createdAt, uri) descending order.
+            filters.append("  FILTER(?createdAt < \"").append(after.createdAt).append("\"^^xsd:dateTime || ")
+                    .append("(?createdAt = \"").append(after.createdAt).append("\"^^xsd:dateTime && ")
+                    .append("STR(?s) < \"").append(sanitize(after.uri)).append("\")) ");
+        }
+        String queryString = PREFIXES +
+                "SELECT ?s ?prompt ?createdAt WHERE { " +
+                "  ?s <" + UserHistoryOntology.userId + "> \"" + safeUserId + "\" ; " +
+                "     a <" + UserHistoryOntology.UserHistory + "> ; " +
+                "     <" + UserHistoryOntology.prompt + "> ?prompt ; " +
+                "     <" + UserHistoryOntology.createdAt + "> ?createdAt . " +
+                filters +
+                "} ORDER BY DESC(?createdAt) DESC(STR(?s)) LIMIT " + limit;
+        List<UserHistoryEntry> entries = new ArrayList<>();
+        String lastURI = null;
+        ResultSet results = blazegraphClient.select(queryString, Duration.ofMillis(readBudgetMs));
+        while (results.hasNext()) {
+            QuerySolution sol = results.nextSolution();
+            String prompt = sol.getLiteral("prompt").getString();
+            String createdAt = sol.getLiteral("createdAt").getLexicalForm();
+            entries.add(new UserHistoryEntry(userId, prompt, createdAt));
+            lastURI = sol.getResource("s").getURI();
+        }
+
+        String nextCursor = null;
+        if (entries.size() == limit) {
+            nextCursor = new HistoryCursor(entries.get(entries.size() - 1).createdAt, lastURI).encode();
+        }
+        return new CursorPage<>(entries, nextCursor);
+    }
+
+    /**
+     * Counts the records per prompt with one aggregate query; records saved before the API
+     * was recorded have no uh:api and are not counted.
+     */
+    @Override
+    public List<PopularPrompt> findPopular(Api api, Instant since, int limit) {
+        String queryString = PREFIXES +
+                "SELECT ?prompt (COUNT(?s) AS ?uses) WHERE { " +
+                "  ?s <" + UserHistoryOntology.api + "> \"" + api.name() + "\" ; " +
+                "     a <" + UserHistoryOntology.UserHistory + "> ; " +
+                "     <" + UserHistoryOntology.prompt + "> ?prompt ; " +
+                "     <" + UserHistoryOntology.createdAt + "> ?createdAt . " +
+                "  FILTER(?createdAt >= \"" + since + "\"^^xsd:dateTime) " +
+                "} GROUP BY ?prompt ORDER BY DESC(?uses) LIMIT " + limit;
+        List<PopularPrompt> prompts = new ArrayList<>();
+        ResultSet results = blazegraphClient.select(queryString, Duration.ofMillis(readBudgetMs));
+        while (results.hasNext()) {
+            QuerySolution sol = results.nextSolution();
+            prompts.add(new PopularPrompt(sol.getLiteral("prompt").getString(), sol.getLiteral("uses").getLong()));
+        }
+        return prompts;
+    }
+
+    /**
+     * Position after the last record of a page: its timestamp and URI (tie-breaker), base64url-encoded.
+     */
+    private static final class HistoryCursor {
+        private final String createdAt;
+        private final String uri;
+
+        private HistoryCursor(String createdAt, String uri) {
+            this.createdAt = createdAt;
+            this.uri = uri;
+        }
+
+        private String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((createdAt + "|" + uri).getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static HistoryCursor decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('|');
+                String createdAt = decoded.substring(0, separator);
+                // Validates the timestamp before it is embedded in the query.
+                Instant.parse(createdAt);
+                return new HistoryCursor(createdAt, decoded.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Takes SPARQL updates (cache and history writes) off the request thread.
+ * Queued updates are sent to Blazegraph as one update request per flush:
+ * the operations are joined with ';', each keeping its own prologue.
+ * <p>
+ * While Blazegraph is unavailable (circuit open, failed or over-budget flush) updates are
+ * deferred in a bounded buffer, oldest dropped first, and replayed in order before newer
+ * updates once Blazegraph answers again, at most replayBatches batches per flush.
+ * An update is dropped after maxAttempts failed sends. A batch Blazegraph rejects (4xx)
+ * is retried update by update, and only the updates rejected on their own are dropped,
+ * so one bad update never holds back the others.
+ */
+@Component
+@Slf4j
+public class BlazegraphWriteBehind {
+
+    private final BlazegraphClient blazegraphClient;
+    private final int batchSize;
+    private final int deferredCapacity;
+    private final int replayBatches;
+    private final int maxAttempts;
+    private final Duration writeBudget;
+    private final WriteBehindQueue<String> queue;
+
+    // Guarded by this.
+    private final Deque<PendingUpdate> deferred = new ArrayDeque<>();
+    private final Counter overflowUpdates;
+    private final Counter rejectedUpdates;
+    private final Counter exhaustedUpdates;
+
+    public BlazegraphWriteBehind(
+            BlazegraphClient blazegraphClient,
+            @Value("${blazegraph.write-behind.capacity:10000}") int capacity,
+            @Value("${blazegraph.write-behind.batch-size:100}") int batchSize,
+            @Value("${blazegraph.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+            @Value("${blazegraph.write-behind.offer-timeout-ms:50}") long offerTimeoutMs,
+            @Value("${blazegraph.write-behind.deferred-capacity:10000}") int deferredCapacity,
+            @Value("${blazegraph.write-behind.replay-batches:5}") int replayBatches,
+            @Value("${blazegraph.write-behind.max-attempts:5}") int maxAttempts,
+            @Value("${blazegraph.write-behind.budget-ms:2000}") long writeBudgetMs,
+            MeterRegistry meterRegistry) {
+        this.blazegraphClient = blazegraphClient;
+        this.batchSize = batchSize;
+        this.deferredCapacity = deferredCapacity;
+        this.replayBatches = replayBatches;
+        this.maxAttempts = maxAttempts;
+        this.writeBudget = Duration.ofMillis(writeBudgetMs);
+        // Single attempt: updates that fail are deferred and retried here, not by the queue.
+        this.queue = new WriteBehindQueue<>("blazegraph", capacity, batchSize, flushIntervalMs, offerTimeoutMs,
+                1, 0, this::flush, meterRegistry);
+        Gauge.builder("gait.write_behind.deferred", this, writeBehind -> writeBehind.deferredCount())
+                .tag("queue", "blazegraph")
+                .register(meterRegistry);
+        this.overflowUpdates = droppedCounter(meterRegistry, "overflow");
+        this.rejectedUpdates = droppedCounter(meterRegistry, "rejected");
+        this.exhaustedUpdates = droppedCounter(meterRegistry, "attempts");
+    }
+
+    private static Counter droppedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("gait.write_behind.dropped")
+                .tag("queue", "blazegraph")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a complete SPARQL update (prefixes included) for the next batch.
+     */
+    public void submit(String updateString) {
+        queue.submit(updateString);
+    }
+
+    private synchronized List<String> flush(List<String> updates) {
+        List<PendingUpdate> batch = updates.stream().map(PendingUpdate::new).collect(Collectors.toList());
+        // Older deferred updates go first; while some remain, newer ones wait behind them.
+        if (!blazegraphClient.isAvailable() || !replayDeferred() || !deferred.isEmpty()) {
+            deferLast(batch);
+        } else {
+            deferLast(send(batch));
+        }
+        return List.of();
+    }
+
+    /**
+     * Keeps replaying the deferred updates when no new update triggers a flush.
+     */
+    @Scheduled(fixedDelayString = "${blazegraph.write-behind.flush-interval-ms:200}")
+    public synchronized void drainDeferred() {
+        if (!deferred.isEmpty() && blazegraphClient.isAvailable()) {
+            replayDeferred();
+        }
+    }
+
+    /**
+     * Sends up to replayBatches batches of deferred updates, oldest first.
+     * Returns false if Blazegraph failed meanwhile (the failed batch is back at the head).
+     */
+    private boolean replayDeferred() {
+        for (int i = 0; i < replayBatches && !deferred.isEmpty(); i++) {
+            List<PendingUpdate> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && !deferred.isEmpty()) {
+                batch.add(deferred.pollFirst());
+            }
+            List<PendingUpdate> failed = send(batch);
+            if (!failed.isEmpty()) {
+                for (int j = failed.size() - 1; j >= 0; j--) {
+                    deferred.addFirst(failed.get(j));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends the batch and returns the updates to retry later because Blazegraph is degraded.
+     * Updates Blazegraph rejects and updates out of attempts are dropped.
+     */
+    private List<PendingUpdate> send(List<PendingUpdate> batch) {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        try {
+            blazegraphClient.update(join(batch), writeBudget);
+            return List.of();
+        } catch (ResponseStatusException e) {
+            if (e.getStatusCode().is4xxClientError()) {
+                return sendOneByOne(batch);
+            }
+            return retryable(batch, e);
+        }
+    }
+
+    /**
+     * Isolates the rejected updates of a batch Blazegraph refused as a whole.
+     */
+    private List<PendingUpdate> sendOneByOne(List<PendingUpdate> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingUpdate update = batch.get(i);
+            try {
+                blazegraphClient.update(update.update, writeBudget);
+            } catch (ResponseStatusException e) {
+                if (!e.getStatusCode().is4xxClientError()) {
+                    return retryable(batch.subList(i, batch.size()), e);
+                }
+                rejectedUpdates.increment();
+                log.warn("Dropping a Blazegraph update it rejected: {}", e.getReason());
+            }
+        }
+        return List.of();
+    }
+
+    private List<PendingUpdate> retryable(List<PendingUpdate> updates, ResponseStatusException e) {
+        List<PendingUpdate> retry = new ArrayList<>(updates.size());
+        int exhausted = 0;
+        for (PendingUpdate update : updates) {
+            if (++update.attempts >= maxAttempts) {
+                exhausted++;
+            } else {
+                retry.add(update);
+            }
+        }
+        if (exhausted > 0) {
+            exhaustedUpdates.increment(exhausted);
+            log.warn("Dropping {} Blazegraph update(s) after {} failed attempts: {}", exhausted, maxAttempts,
+                    e.getReason());
+        }
+        if (!retry.isEmpty()) {
+            log.warn("Deferring {} Blazegraph update(s): {}", retry.size(), e.getReason());
+        }
+        return retry;
+    }
+
+    private void deferLast(List<PendingUpdate> updates) {
+        int dropped = 0;
+        for (PendingUpdate update : updates) {
+            if (deferred.size() >= deferredCapacity) {
+                deferred.pollFirst();
+                dropped++;
+            }
+            deferred.addLast(update);
+        }
+        if (dropped > 0) {
+            overflowUpdates.increment(dropped);
+            log.warn("Dropped {} deferred Blazegraph update(s), deferred buffer full", dropped);
+        }
+    }
+
+    private synchronized int deferredCount() {
+        return deferred.size();
+    }
+
+    private static String join(List<PendingUpdate> updates) {
+        return updates.stream().map(update -> update.update).collect(Collectors.joining(" ;\n"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queue.close();
+        synchronized (this) {
+            if (!deferred.isEmpty()) {
+                log.warn("Discarding {} deferred Blazegraph update(s) on shutdown", deferred.size());
+            }
+        }
+    }
+
+    /**
+     * A queued update and how many times sending it failed.
+     */
+    private static final class PendingUpdate {
+        private final String update;
+        private int attempts;
+
+        private PendingUpdate(String update) {
+            this.update = update;
+        }
+    }
+}
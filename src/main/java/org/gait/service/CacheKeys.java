@@ -0,0 +1,89 @@
+package org.gait.service;
+
+import org.gait.dto.Api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Derives fixed-length, content-addressed cache keys from client prompts and GraphQL queries.
+ */
+public final class CacheKeys {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private CacheKeys() {
+        // Prevent instantiation.
+    }
+
+    /**
+     * Normalizes a prompt so that trivially different wordings share a key:
+     * Unicode NFKC, trimmed, whitespace runs collapsed to one space and lower-cased.
+     */
+    public static String normalize(String prompt) {
+        if (prompt == null) return "";
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the hex SHA-256 of the API and the normalized prompt (64 characters).
+     * The API is part of the key because the same prompt yields different results per API.
+     */
+    public static String cacheKey(Api api, String prompt) {
+        return sha256((api != null ? api.name() : "") + "\n" + normalize(prompt));
+    }
+
+    /**
+     * Returns the hex SHA-256 of the API and the canonical form of a GraphQL document,
+     * so that every prompt resolving to the same upstream query shares one result.
+     */
+    public static String queryKey(Api api, String graphQLQuery) {
+        return sha256("graphql\n" + (api != null ? api.name() : "") + "\n" + canonicalQuery(graphQLQuery));
+    }
+
+    /**
+     * Collapses insignificant whitespace of a GraphQL document, leaving string literals untouched.
+     */
+    static String canonicalQuery(String graphQLQuery) {
+        StringBuilder sb = new StringBuilder(graphQLQuery.length());
+        boolean inString = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < graphQLQuery.length(); i++) {
+            char c = graphQLQuery.charAt(i);
+            if (inString) {
+                sb.append(c);
+                if (c == '\\' && i + 1 < graphQLQuery.length()) {
+                    sb.append(graphQLQuery.charAt(++i));
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (Character.isWhitespace(c) || c == ',') {
+                pendingSpace = true;
+            } else {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(c);
+                inString = c == '"';
+            }
+        }
+        return sb.toString();
+    }
+
+    static String sha256(String input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(input.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
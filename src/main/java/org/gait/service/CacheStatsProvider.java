@@ -0,0 +1,11 @@
+package org.gait.service;
+
+import org.gait.dto.CacheStats;
+
+/**
+ * Implemented by every in-process cache that reports its statistics on /admin/cache-stats.
+ */
+public interface CacheStatsProvider {
+
+    CacheStats cacheStats();
+}
@@ -0,0 +1,181 @@
+package org.gait.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.dto.Api;
+import org.gait.dto.ClientRequest;
+import org.gait.service.UserHistoryService.PopularPrompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pre-warms the result cache with the most popular prompts of each API, read from the user history
+ * (top-N over the last windowHours). It runs once the application is ready, then every intervalMs:
+ * each run recomputes the popular prompts that are not cached, or whose entry goes stale before the
+ * next run, so hot prompts never fall out of the cache.
+ * <p>
+ * Runs on its own thread with at most maxConcurrent prompts in flight, leaving the client
+ * executor and the upstream connections to live traffic.
+ */
+@Component
+@Slf4j
+public class CacheWarmer {
+
+    private final UserHistoryService userHistoryService;
+    private final ResultCacheService resultCacheService;
+    private final ClientService clientService;
+    private final boolean enabled;
+    private final int topN;
+    private final Duration window;
+    private final Duration interval;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "cache-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CacheWarmer(UserHistoryService userHistoryService,
+                       ResultCacheService resultCacheService,
+                       ClientService clientService,
+                       @Value("${cache.warmer.enabled:true}") boolean enabled,
+                       @Value("${cache.warmer.top-n:50}") int topN,
+                       @Value("${cache.warmer.window-hours:24}") long windowHours,
+                       @Value("${cache.warmer.interval-ms:300000}") long intervalMs,
+                       @Value("${cache.warmer.max-concurrent:2}") int maxConcurrent) {
+        this.userHistoryService = userHistoryService;
+        this.resultCacheService = resultCacheService;
+        this.clientService = clientService;
+        this.enabled = enabled;
+        this.topN = topN;
+        this.window = Duration.ofHours(windowHours);
+        this.interval = Duration.ofMillis(intervalMs);
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        trigger();
+    }
+
+    @Scheduled(fixedDelayString = "${cache.warmer.interval-ms:300000}",
+            initialDelayString = "${cache.warmer.interval-ms:300000}")
+    public void warmPeriodically() {
+        trigger();
+    }
+
+    /**
+     * Starts a run on the warmer thread, unless one is still going.
+     */
+    private void trigger() {
+        if (enabled && running.compareAndSet(false, true)) {
+            runner.execute(() -> {
+                try {
+                    warm();
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * One run: recomputes the due prompts of every API, then waits for the last of them.
+     */
+    void warm() {
+        // Entries going stale before the next run are renewed now.
+        Instant renewBefore = Instant.now().plus(interval);
+        Instant since = Instant.now().minus(window);
+        int warmed = 0;
+        apis:
+        for (Api api : Api.values()) {
+            List<PopularPrompt> popular;
+            try {
+                popular = userHistoryService.getPopularPrompts(api, since, topN);
+            } catch (ResponseStatusException e) {
+                log.warn("Cache warmer could not read popular {} prompts: {}", api, e.getReason());
+                continue;
+            } catch (Exception e) {
+                log.warn("Cache warmer could not read popular {} prompts: {}", api, e.getMessage());
+                continue;
+            }
+
+            Map<String, String> prompts = new LinkedHashMap<>();
+            for (PopularPrompt prompt : popular) {
+                prompts.put(CacheKeys.cacheKey(api, prompt.prompt), prompt.prompt);
+            }
+            Map<String, BlazegraphCacheService.CachedEntry> cached = resultCacheService.fetchAll(prompts.keySet());
+
+            List<String> due = new ArrayList<>();
+            prompts.forEach((key, prompt) -> {
+                BlazegraphCacheService.CachedEntry entry = cached.get(key);
+                if (entry == null || resultCacheService.staleAt(entry).isBefore(renewBefore)) {
+                    due.add(prompt);
+                }
+            });
+            for (String prompt : due) {
+                if (!warm(api, prompt)) {
+                    break apis;
+                }
+                warmed++;
+            }
+        }
+        // Wait for the last prompts so the next run does not overlap this one, also when interrupted.
+        permits.acquireUninterruptibly(maxConcurrent);
+        permits.release(maxConcurrent);
+        if (warmed > 0) {
+            log.info("Cache warmer renewed {} popular prompt(s)", warmed);
+        }
+    }
+
+    /**
+     * Recomputes one prompt once a permit is free. Returns false if interrupted.
+     */
+    private boolean warm(Api api, String prompt) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        ClientRequest request = new ClientRequest();
+        request.setApi(api);
+        request.setPrompt(prompt);
+        try {
+            clientService.warmClientPrompt(request).whenComplete((result, error) -> {
+                permits.release();
+                if (error != null) {
+                    log.debug("Cache warmer failed to renew a {} prompt: {}", api, error.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            log.debug("Cache warmer failed to renew a {} prompt: {}", api, e.getMessage());
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+}
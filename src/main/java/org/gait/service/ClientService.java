@@ -1,58 +1,106 @@
 package org.gait.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
-import org.apache.jena.query.*;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.dto.Api;
 import org.gait.dto.ClientRequest;
 import org.gait.dto.NLPResponse;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ClientService {
 
-    private final RestTemplate restTemplate;
-    private final ResourceLoader resourceLoader;
+    private final GraphQLClient graphQLClient;
+    private final GraphQLBatcher graphQLBatcher;
+    private final OntologyMappingService ontologyMappingService;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final BlazegraphCacheService cacheService;
+    private final ResultCacheService resultCacheService;
+    private final QueryPlanCache queryPlanCache;
+    private final SingleFlight<String, String> promptFlights = new SingleFlight<>();
+    private final ThreadPoolTaskExecutor clientExecutor;
+    private final PipelineMetrics pipelineMetrics;
+
+    @Value("${client.coalesce.timeout-ms:30000}")
+    private long coalesceTimeoutMs;
+
+    // Streamed results larger than this are sent to the client but not cached.
+    // Each cached one is held twice while saved: the teed bytes and the decoded string.
+    @Value("${client.stream.max-cached-bytes:1048576}")
+    private long streamMaxCachedBytes;
+
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
     /**
      * Processes a client prompt and returns the final GraphQL API result.
      * First checks for a cached result; if none is found, it processes the prompt.
+     * Concurrent misses for the same prompt are coalesced into a single computation.
+     * A stale cached result is returned right away and refreshed in the background.
      */
     public String handleClientPrompt(ClientRequest request) {
-        String prompt = request.getPrompt();
+        String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
 
         // Check if a valid cached entry exists.
         try {
-            BlazegraphCacheService.CachedEntry cached = cacheService.fetchCacheEntry(prompt);
+            BlazegraphCacheService.CachedEntry cached = resultCacheService.fetch(key);
             if (cached != null) {
-                System.out.println("Cache hit!");
-                System.out.println("Cached GraphQL Result: " + cached.graphQLResult);
-                return cached.graphQLResult;
+                log.debug("Cache hit for a {} prompt", request.getApi());
+                return serveCached(request, key, cached);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Cache lookup failed: {}", e.getMessage());
+        }
+
+        // No cache found: compute once per prompt, other callers wait for that result.
+        try {
+            return promptFlights.execute(key, () -> computeClientPrompt(request, key), coalesceTimeoutMs);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                    "Timed out waiting for an identical in-flight prompt");
+        }
+    }
+
+    /**
+     * Computes the result of a prompt that missed the cache.
+     */
+    private String computeClientPrompt(ClientRequest request, String key) {
+        // A previous flight on this node may have filled the L1 since our cache miss.
+        BlazegraphCacheService.CachedEntry cached = resultCacheService.fetchLocal(key);
+        if (cached != null && !resultCacheService.isStale(cached)) {
+            return cached.graphQLResult;
         }
 
-        // No cache found: call NLP service.
-        String nlpResponse = callNlpService(request);
-        System.out.println("Received NLP response: " + nlpResponse);
+        // Call the NLP service.
+        String nlpResponse = pipelineMetrics.timer(PipelineMetrics.Stage.NLP_CALL)
+                .record(() -> callNlpService(request));
+        log.debug("Received NLP response: {}", nlpResponse);
 
         // Process the NLP response to build and execute the GraphQL query.
-        return processNlpResponse(nlpResponse, prompt);
+        return processNlpResponse(nlpResponse, request);
     }
 
     /**
@@ -90,134 +138,379 @@ public class ClientService {
     /**
      * Processes the NLP response by:
      * - Parsing the response.
-     * - Loading the appropriate ontology.
-     * - Building the SPARQL and GraphQL queries.
+     * - Looking up the pre-compiled ontology mapping.
+     * - Building the GraphQL query.
      * - Invoking the external GraphQL API.
      * - Caching the final result.
      * Returns the final GraphQL API result.
      */
-    public String processNlpResponse(String nlpResponse, String originalPrompt) {
+    public String processNlpResponse(String nlpResponse, ClientRequest request) {
         try {
-            NLPResponse response = objectMapper.readValue(nlpResponse, NLPResponse.class);
-            String target = response.getTarget();
-            String subEntity = response.getSubEntity();
-            List<String> constraints = response.getConstraints();
-            String constraint = (constraints != null && !constraints.isEmpty()) ? constraints.get(0) : null;
-
-            // Select ontology file based on API.
-            String ontologyFile;
-            if ("github".equalsIgnoreCase(response.getApi())) {
-                ontologyFile = "classpath:ontology/graphQLOntology_github.ttl";
-            } else if ("countries".equalsIgnoreCase(response.getApi())) {
-                ontologyFile = "classpath:ontology/graphQLOntology_countries.ttl";
-            } else {
-                System.err.println("Unknown API: " + response.getApi());
-                return "";
+            PreparedQuery prepared = prepareQuery(nlpResponse, request, true);
+            if (prepared.result != null) {
+                return prepared.result;
             }
 
-            // Load the ontology.
-            Resource ontologyResource = resourceLoader.getResource(ontologyFile);
-            Model model = ModelFactory.createDefaultModel();
-            try (InputStream in = ontologyResource.getInputStream()) {
-                model.read(in, null, "TTL");
-            } catch (IOException e) {
-                System.err.println("Error loading ontology: " + e.getMessage());
-                return "";
+            // Call the external GraphQL API.
+            String graphQLResult = pipelineMetrics.timer(PipelineMetrics.Stage.UPSTREAM_CALL)
+                    .record(() -> queryExternalGraphQLApi(prepared.graphQLQuery, prepared.api));
+            log.debug("GraphQL API {} answered {} chars", prepared.api, graphQLResult.length());
+
+            // Cache the final result under the query and point the prompt at it.
+            if (isCacheable(graphQLResult)) {
+                String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+                resultCacheService.save(key, request.getPrompt(), prepared.api, prepared.graphQLQuery, graphQLResult);
             }
 
-            // Retrieve target mapping.
-            String targetSparql = "PREFIX ex: <http://example.org/ontology#> " +
-                    "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " +
-                    "SELECT ?targetField ?identifierArgument WHERE { " +
-                    "  ?targetConcept rdfs:label \"" + target + "\" ; " +
-                    "                 ex:mapsToField ?targetField ; " +
-                    "                 ex:identifierArgument ?identifierArgument . " +
-                    "}";
-            String targetField = "";
-            String identifierArgument = "";
-            Query targetQuery = QueryFactory.create(targetSparql);
-            try (QueryExecution qexec = QueryExecutionFactory.create(targetQuery, model)) {
-                ResultSet results = qexec.execSelect();
-                if (results.hasNext()) {
-                    QuerySolution sol = results.nextSolution();
-                    targetField = sol.getLiteral("targetField").getString();
-                    identifierArgument = sol.getLiteral("identifierArgument").getString();
+            return graphQLResult;
+        } catch (ResponseStatusException e) {
+            // Upstream timeouts and failures are reported to the caller (504/502/503)
+            throw e;
+        } catch (IOException e) {
+            log.warn("Error parsing NLP response: {}", e.getMessage());
+            return "";
+        } catch (Exception ex) {
+            log.error("Processing error: {}", ex.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #handleClientPrompt}.
+     * The blocking steps (disk and Blazegraph lookups, NLP call, planning) run on the client executor,
+     * the upstream GraphQL call holds no thread while in flight, and the cache save
+     * runs after the result is handed back. A stale hit in any tier is served and refreshed in the background.
+     */
+    public CompletableFuture<String> handleClientPromptAsync(ClientRequest request) {
+        String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+
+        BlazegraphCacheService.CachedEntry cached = resultCacheService.fetchLocal(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(serveCached(request, key, cached));
+        }
+
+        return CompletableFuture.supplyAsync(() -> fetchBelowLocal(key), clientExecutor)
+                .thenCompose(tiered -> tiered != null
+                        ? CompletableFuture.completedFuture(serveCached(request, key, tiered))
+                        : computeCoalesced(request, key, CacheLookup.LOCAL));
+    }
+
+    private BlazegraphCacheService.CachedEntry fetchBelowLocal(String key) {
+        try {
+            return resultCacheService.fetchBelowLocal(key);
+        } catch (Exception e) {
+            log.warn("Cache lookup failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached result; if it is stale, starts one background refresh of the prompt
+     * (joined by any identical prompt computing at the same time).
+     */
+    private String serveCached(ClientRequest request, String key, BlazegraphCacheService.CachedEntry cached) {
+        if (resultCacheService.isStale(cached)) {
+            promptFlights.executeAsync(key, () -> computeClientPromptAsync(request, key, CacheLookup.ALL),
+                            coalesceTimeoutMs)
+                    .exceptionally(error -> {
+                        log.warn("Background refresh failed: {}", error.getMessage());
+                        return null;
+                    });
+        }
+        return cached.graphQLResult;
+    }
+
+    /**
+     * Recomputes the prompt upstream and re-caches it, whatever is cached, so that a popular
+     * entry is renewed before it expires. Joins an identical prompt already in flight.
+     */
+    public CompletableFuture<String> warmClientPrompt(ClientRequest request) {
+        String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+        return promptFlights.executeAsync(key, () -> computeClientPromptAsync(request, key, CacheLookup.NONE),
+                coalesceTimeoutMs);
+    }
+
+    /**
+     * Processes a batch of prompts and returns their results in request order.
+     * Identical prompts are computed once, cache hits are resolved with one bulk lookup
+     * and the misses run in parallel. A prompt that fails yields a null result
+     * instead of failing the whole batch.
+     */
+    public CompletableFuture<List<String>> handleClientPromptBatch(List<ClientRequest> requests) {
+        // Deduplicate by cache key, first occurrence wins.
+        List<String> keys = new ArrayList<>(requests.size());
+        Map<String, ClientRequest> unique = new LinkedHashMap<>();
+        for (ClientRequest request : requests) {
+            String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+            keys.add(key);
+            unique.putIfAbsent(key, request);
+        }
+
+        Map<String, BlazegraphCacheService.CachedEntry> hits;
+        try {
+            hits = resultCacheService.fetchAll(unique.keySet());
+        } catch (Exception e) {
+            log.warn("Bulk cache lookup failed: {}", e.getMessage());
+            hits = Map.of();
+        }
+
+        Map<String, CompletableFuture<String>> results = new HashMap<>();
+        for (Map.Entry<String, ClientRequest> entry : unique.entrySet()) {
+            String key = entry.getKey();
+            BlazegraphCacheService.CachedEntry hit = hits.get(key);
+            CompletableFuture<String> result = hit != null
+                    ? CompletableFuture.completedFuture(serveCached(entry.getValue(), key, hit))
+                    : computeCoalesced(entry.getValue(), key, CacheLookup.LOCAL);
+            results.put(key, result.exceptionally(error -> {
+                log.warn("Batch prompt failed: {}", error.getMessage());
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture[0]))
+                .thenApply(done -> keys.stream()
+                        .map(key -> results.get(key).join())
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Computes a prompt that missed the L1, coalesced with identical prompts in flight.
+     */
+    private CompletableFuture<String> computeCoalesced(ClientRequest request, String key, CacheLookup lookup) {
+        return promptFlights.executeAsync(key, () -> computeClientPromptAsync(request, key, lookup),
+                        coalesceTimeoutMs)
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                                "Timed out waiting for an identical in-flight prompt");
+                    }
+                    throw error instanceof CompletionException completionException
+                            ? completionException : new CompletionException(error);
+                });
+    }
+
+    /**
+     * A caller waiting on a miss gets the result before it is saved. A background refresh (or warm-up)
+     * saves it before its flight completes, so the stale entry is replaced in the L1 by the time the
+     * flight is released and later requests do not start another refresh.
+     */
+    private CompletableFuture<String> computeClientPromptAsync(ClientRequest request, String key,
+                                                               CacheLookup lookup) {
+        return CompletableFuture.supplyAsync(() -> prepareClientPrompt(request, key, lookup), clientExecutor)
+                .thenCompose(prepared -> {
+                    if (prepared.result != null) {
+                        return CompletableFuture.completedFuture(prepared.result);
+                    }
+                    Timer.Sample upstreamCall = Timer.start();
+                    CompletableFuture<String> upstream = graphQLBatcher
+                            .executeAsync(prepared.api, prepared.graphQLQuery)
+                            .whenComplete((graphQLResult, error) ->
+                                    upstreamCall.stop(pipelineMetrics.timer(PipelineMetrics.Stage.UPSTREAM_CALL)));
+                    if (lookup != CacheLookup.LOCAL) {
+                        return upstream.thenApplyAsync(graphQLResult -> {
+                            if (isCacheable(graphQLResult)) {
+                                resultCacheService.save(key, request.getPrompt(), prepared.api,
+                                        prepared.graphQLQuery, graphQLResult);
+                            }
+                            return graphQLResult;
+                        }, clientExecutor);
+                    }
+                    return upstream.thenApply(graphQLResult -> {
+                        if (isCacheable(graphQLResult)) {
+                            clientExecutor.execute(() -> resultCacheService.save(key, request.getPrompt(),
+                                    prepared.api, prepared.graphQLQuery, graphQLResult));
+                        }
+                        return graphQLResult;
+                    });
+                });
+    }
+
+    /**
+     * Streaming variant of {@link #handleClientPrompt}: writes the result to the output as it arrives.
+     * Upstream bytes are copied straight to the client while a copy is teed for the cache,
+     * which is saved after the response has been written (only up to streamMaxCachedBytes,
+     * and only if it is a cacheable GraphQL answer).
+     * Streamed prompts are neither coalesced nor batched, as a stream cannot be shared.
+     */
+    public void streamClientPrompt(ClientRequest request, OutputStream out) throws IOException {
+        String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+        try {
+            BlazegraphCacheService.CachedEntry cached = resultCacheService.fetch(key);
+            if (cached != null) {
+                out.write(serveCached(request, key, cached).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Cache lookup failed: {}", e.getMessage());
+        }
+
+        PreparedQuery prepared = prepareClientPrompt(request, key, CacheLookup.LOCAL);
+        if (prepared.result != null) {
+            out.write(prepared.result.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        // Non-2xx answers fail in openStream, before anything is written or teed.
+        TeeBuffer copy = new TeeBuffer();
+        boolean cacheable = true;
+        Timer.Sample upstreamCall = Timer.start();
+        try (InputStream in = graphQLClient.openStream(prepared.api, prepared.graphQLQuery)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (cacheable) {
+                    if (copy.size() + read > streamMaxCachedBytes) {
+                        // Too large for the cache: stop teeing and drop what was kept.
+                        cacheable = false;
+                        copy = null;
+                    } else {
+                        copy.write(buffer, 0, read);
+                    }
                 }
             }
+        } finally {
+            upstreamCall.stop(pipelineMetrics.timer(PipelineMetrics.Stage.UPSTREAM_CALL));
+        }
+        out.flush();
 
-            // Retrieve sub-entity mapping.
-            String subEntitySparql = "PREFIX ex: <http://example.org/ontology#> " +
-                    "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " +
-                    "SELECT ?subEntityField ?graphqlType ?argumentField ?orderingField ?defaultDirection WHERE { " +
-                    "  ?concept rdfs:label \"" + subEntity + "\" ; " +
-                    "           ex:mapsToGraphQLType ?graphqlType ; " +
-                    "           ex:mapsToField ?subEntityField . " +
-                    (constraint != null ?
-                            "  OPTIONAL { " +
-                                    "    ?constraintConcept rdfs:label \"" + constraint + "\" ; " +
-                                    "                      ex:mapsToArgumentField ?argumentField ; " +
-                                    "                      ex:mapsToOrderingField ?orderingField ; " +
-                                    "                      ex:defaultDirection ?defaultDirection . " +
-                                    "  } " : "") +
-                    "}";
-            Query subEntityQuery = QueryFactory.create(subEntitySparql);
-            String subEntityField = "";
-            String orderingField = "";
-            String defaultDirection = "";
-            String argumentField = "";
-            try (QueryExecution qexec = QueryExecutionFactory.create(subEntityQuery, model)) {
-                ResultSet results = qexec.execSelect();
-                if (results.hasNext()) {
-                    QuerySolution sol = results.nextSolution();
-                    subEntityField = sol.getLiteral("subEntityField").getString();
-                    if (sol.contains("argumentField"))
-                        argumentField = sol.getLiteral("argumentField").getString();
-                    if (sol.contains("orderingField"))
-                        orderingField = sol.getLiteral("orderingField").getString();
-                    if (sol.contains("defaultDirection"))
-                        defaultDirection = sol.getLiteral("defaultDirection").getString();
+        if (cacheable) {
+            TeeBuffer result = copy;
+            clientExecutor.execute(() -> {
+                // Checked on the raw bytes, so an error body is never decoded.
+                if (result.isCacheable()) {
+                    resultCacheService.save(key, request.getPrompt(), prepared.api, prepared.graphQLQuery,
+                            result.toString(StandardCharsets.UTF_8));
                 }
+            });
+        }
+    }
+
+    /**
+     * Everything before the upstream call: cache lookups, NLP call and query planning.
+     * Stale entries count as misses here and only here: this is the computation that refreshes them,
+     * the front doors serve them through {@link #serveCached}.
+     */
+    private PreparedQuery prepareClientPrompt(ClientRequest request, String key, CacheLookup lookup) {
+        try {
+            BlazegraphCacheService.CachedEntry cached = switch (lookup) {
+                case ALL -> resultCacheService.fetch(key);
+                case LOCAL -> resultCacheService.fetchLocal(key);
+                case NONE -> null;
+            };
+            if (cached != null && !resultCacheService.isStale(cached)) {
+                return PreparedQuery.answered(cached.graphQLResult);
             }
+        } catch (Exception e) {
+            log.warn("Cache lookup failed: {}", e.getMessage());
+        }
 
-            // Build the GraphQL query.
-            String graphQLQuery = buildGraphQLQuery(response, targetField, identifierArgument,
-                    subEntityField, argumentField, orderingField, defaultDirection);
-            System.out.println("Generated GraphQL Query:");
-            System.out.println(graphQLQuery);
+        try {
+            String nlpResponse = pipelineMetrics.timer(PipelineMetrics.Stage.NLP_CALL)
+                    .record(() -> callNlpService(request));
+            return prepareQuery(nlpResponse, request, lookup != CacheLookup.NONE);
+        } catch (IOException e) {
+            log.warn("Error parsing NLP response: {}", e.getMessage());
+            return PreparedQuery.answered("");
+        }
+    }
 
-            // Call the external GraphQL API.
-            String graphQLResult = queryExternalGraphQLApi(graphQLQuery, response.getApi());
-            System.out.println("GraphQL API response:");
-            System.out.println(graphQLResult);
+    /**
+     * Parses the NLP response and builds its GraphQL query.
+     * The query is already answered when another prompt resolved to it (shared result, unless
+     * reuseShared is false) or when the response names an unknown API (empty result).
+     */
+    private PreparedQuery prepareQuery(String nlpResponse, ClientRequest request, boolean reuseShared)
+            throws IOException {
+        Timer.Sample ontologyMapping = Timer.start();
+        NLPResponse response = objectMapper.readValue(nlpResponse, NLPResponse.class);
 
-            // Cache the final result (storing only the prompt and final GraphQL result).
-            cacheService.saveCacheEntry(originalPrompt, graphQLResult);
+        // Look up the pre-compiled ontology mapping for the API.
+        Api api = Api.fromName(response.getApi());
+        if (api == null) {
+            log.warn("Unknown API: {}", response.getApi());
+            return PreparedQuery.answered("");
+        }
+        OntologyMapping mapping = ontologyMappingService.forApi(api);
+        ontologyMapping.stop(pipelineMetrics.timer(PipelineMetrics.Stage.ONTOLOGY_MAPPING));
 
-            return graphQLResult;
-        } catch (IOException e) {
-            System.err.println("Error parsing NLP response: " + e.getMessage());
-            return "";
-        } catch (Exception ex) {
-            System.err.println("Processing error: " + ex.getMessage());
-            return "";
+        // Build the GraphQL query, reusing the plan of an identically shaped response.
+        String graphQLQuery = pipelineMetrics.timer(PipelineMetrics.Stage.GRAPHQL_BUILD).record(() ->
+                queryPlanCache.get(api, mapping.getGeneration(), response, () -> planQuery(response, mapping))
+                        .render(response.getIdentifier()));
+        log.debug("Generated GraphQL query: {}", graphQLQuery);
+
+        // Another prompt may already have resolved to the same query: share its result.
+        String key = CacheKeys.cacheKey(request.getApi(), request.getPrompt());
+        if (!reuseShared) {
+            return new PreparedQuery(api, graphQLQuery, null);
         }
+        try {
+            BlazegraphCacheService.CachedEntry shared = resultCacheService.fetchResult(api, graphQLQuery);
+            if (shared != null && !resultCacheService.isStale(shared)) {
+                resultCacheService.link(key, request.getPrompt(), api, graphQLQuery, shared);
+                return PreparedQuery.answered(shared.graphQLResult);
+            }
+        } catch (Exception e) {
+            log.warn("Shared result lookup failed: {}", e.getMessage());
+        }
+        return new PreparedQuery(api, graphQLQuery, null);
     }
 
     /**
-     * Builds a GraphQL query based on the NLP response and the retrieved mappings.
+     * Resolves the ontology mappings for the response and builds its query plan.
      */
-    public String buildGraphQLQuery(NLPResponse response,
+    private QueryPlan planQuery(NLPResponse response, OntologyMapping mapping) {
+        List<String> constraints = response.getConstraints();
+        String constraint = (constraints != null && !constraints.isEmpty()) ? constraints.get(0) : null;
+
+        // Retrieve target mapping.
+        String targetField = "";
+        String identifierArgument = "";
+        OntologyMapping.TargetMapping targetMapping = mapping.target(response.getTarget());
+        if (targetMapping != null) {
+            targetField = targetMapping.field;
+            identifierArgument = targetMapping.identifierArgument;
+        }
+
+        // Retrieve sub-entity mapping (the constraint only applies to a known sub-entity).
+        String subEntityField = "";
+        String orderingField = "";
+        String defaultDirection = "";
+        String argumentField = "";
+        OntologyMapping.SubEntityMapping subEntityMapping = mapping.subEntity(response.getSubEntity());
+        if (subEntityMapping != null) {
+            subEntityField = subEntityMapping.field;
+            OntologyMapping.ConstraintMapping constraintMapping = mapping.constraint(constraint);
+            if (constraintMapping != null) {
+                argumentField = constraintMapping.argumentField;
+                orderingField = constraintMapping.orderingField;
+                defaultDirection = constraintMapping.defaultDirection;
+            }
+        }
+
+        return buildQueryPlan(response, targetField, identifierArgument,
+                subEntityField, argumentField, orderingField, defaultDirection);
+    }
+
+    /**
+     * Builds a GraphQL query plan based on the NLP response and the retrieved mappings.
+     * The identifier is left unbound so the plan can be reused for any identifier.
+     */
+    public QueryPlan buildQueryPlan(NLPResponse response,
                                     String targetField,
                                     String identifierArgument,
                                     String subEntityField,
                                     String argumentField,
                                     String orderingField,
                                     String defaultDirection) {
+        String prefix = "query {\n" +
+                "  " + targetField + "(" + identifierArgument + ": \"";
         if ("countries".equalsIgnoreCase(response.getApi())) {
             StringBuilder sb = new StringBuilder();
-            sb.append("query {\n");
-            sb.append("  ").append(targetField).append("(").append(identifierArgument)
-                    .append(": \"").append(response.getIdentifier()).append("\") {\n");
+            sb.append("\") {\n");
             sb.append("    ").append(subEntityField).append(" {\n");
             for (String field : response.getFields()) {
                 sb.append("      ").append(field).append("\n");
@@ -225,12 +518,10 @@ public class ClientService {
             sb.append("    }\n");
             sb.append("  }\n");
             sb.append("}\n");
-            return sb.toString();
+            return new QueryPlan(prefix, sb.toString());
         } else {
             StringBuilder sb = new StringBuilder();
-            sb.append("query {\n");
-            sb.append("  ").append(targetField).append("(").append(identifierArgument)
-                    .append(": \"").append(response.getIdentifier()).append("\") {\n");
+            sb.append("\") {\n");
             sb.append("    ").append(subEntityField).append("(first: ").append(response.getLimit());
             if (!argumentField.isEmpty() && !orderingField.isEmpty() && !defaultDirection.isEmpty()) {
                 sb.append(", ").append(argumentField)
@@ -246,38 +537,87 @@ public class ClientService {
             sb.append("    }\n");
             sb.append("  }\n");
             sb.append("}\n");
-            return sb.toString();
+            return new QueryPlan(prefix, sb.toString());
         }
     }
 
     /**
      * Executes the GraphQL API call to an external endpoint and returns the result.
+     * Concurrent calls to the same API may be merged into one upstream request (see {@link GraphQLBatcher}).
      */
-    public String queryExternalGraphQLApi(String graphQLQuery, String api) {
-        String publicEndpoint;
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        if ("github".equalsIgnoreCase(api)) {
-            publicEndpoint = "https://api.github.com/graphql";
-            headers.set("Authorization", "Bearer YOUR_GITHUB_TOKEN");
-        } else if ("countries".equalsIgnoreCase(api)) {
-            publicEndpoint = "https://countries.trevorblades.com/";
-        } else {
-            System.err.println("Unknown API: " + api);
-            return "";
+    public String queryExternalGraphQLApi(String graphQLQuery, Api api) {
+        return graphQLBatcher.execute(api, graphQLQuery);
+    }
+
+    /**
+     * Returns whether an upstream response may be cached: it has a data object and no errors.
+     * A partial or failed answer is handed back to the caller but never stored, so it cannot
+     * be served to anyone else until its TTL runs out.
+     */
+    private boolean isCacheable(String graphQLResult) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(graphQLResult)) {
+            return isCacheable(parser);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isCacheable(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        boolean hasData = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field)) {
+                hasData = value == JsonToken.START_OBJECT;
+            } else if ("errors".equals(field)
+                    && value == JsonToken.START_ARRAY && parser.nextToken() != JsonToken.END_ARRAY) {
+                return false;
+            }
+            parser.skipChildren();
         }
+        return hasData;
+    }
 
-        Map<String, String> body = new HashMap<>();
-        body.put("query", graphQLQuery);
-        HttpEntity<Map<String, String>> entity = new HttpEntity<>(body, headers);
+    /**
+     * The teed copy of a streamed result, checked for cacheability in place without another copy.
+     */
+    private final class TeeBuffer extends ByteArrayOutputStream {
 
-        ResponseEntity<String> response = restTemplate.postForEntity(publicEndpoint, entity, String.class);
-        if (response.getStatusCode().is2xxSuccessful()) {
-            return response.getBody();
-        } else {
-            System.err.println("Error querying GraphQL API (" + api + "): " + response.getStatusCode());
-            return "";
+        private synchronized boolean isCacheable() {
+            try (JsonParser parser = objectMapper.getFactory().createParser(buf, 0, count)) {
+                return ClientService.isCacheable(parser);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Where a computation may find the prompt's result before going upstream.
+     */
+    private enum CacheLookup {
+        // Every cache tier, then a result shared with another prompt.
+        ALL,
+        // The L1 only (the other tiers were just checked), then a shared result.
+        LOCAL,
+        // Nothing: always recomputed upstream.
+        NONE
+    }
+
+    /**
+     * A GraphQL query ready to be sent upstream, or the result when no upstream call is needed.
+     */
+    @RequiredArgsConstructor
+    private static final class PreparedQuery {
+        private final Api api;
+        private final String graphQLQuery;
+        private final String result;
+
+        private static PreparedQuery answered(String result) {
+            return new PreparedQuery(null, null, result);
         }
     }
 }
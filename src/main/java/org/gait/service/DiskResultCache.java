@@ -0,0 +1,560 @@
+package org.gait.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.dto.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent local cache tier between the in-heap L1 and Blazegraph.
+ * Entries are appended to segment files of at most segmentBytes, read and written with positional
+ * FileChannel calls, so payloads live in the page cache (off-heap, no GC cost) and the tier can be far
+ * larger than the heap. Segments are not memory-mapped: a mapping can only be released by the GC, whereas
+ * closing the channel of a deleted segment frees its file and disk space at once (a reader racing the
+ * deletion sees a miss).
+ * Only the key -> location index is kept on the heap; it is rebuilt from the segments at startup,
+ * so the cache is warm right after a restart. Recovery reads record headers and keys only; a record's
+ * checksum is verified when it is read, and a corrupt record is a miss.
+ * If the directory cannot be opened the tier is disabled and the cache works without it.
+ * <p>
+ * Record layout: magic, key length, prompt length (-1 for none), payload length, createdAt
+ * (epoch millis), CRC32 of the bytes that follow, then key, prompt and payload (UTF-8).
+ * A periodic compaction copies the live records of mostly dead segments forward and deletes
+ * segments with no live records; beyond maxBytes the oldest segment is dropped.
+ */
+@Component
+@Slf4j
+public class DiskResultCache implements CacheStatsProvider {
+
+    private static final int MAGIC = 0x47414954;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Pattern SEGMENT_NAME =
+            Pattern.compile(Pattern.quote(SEGMENT_PREFIX) + "(\\d{1,18})" + Pattern.quote(SEGMENT_SUFFIX));
+
+    private volatile boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final double compactionLiveRatio;
+    // TTL plus the stale grace window: how long an entry is kept after its creation.
+    private final Duration retention;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Guarded by this.
+    private Segment active;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DiskResultCache(@Value("${cache.disk.enabled:true}") boolean enabled,
+                           @Value("${cache.disk.directory:data/result-cache}") String directory,
+                           @Value("${cache.disk.segment-bytes:67108864}") int segmentBytes,
+                           @Value("${cache.disk.max-bytes:1073741824}") long maxBytes,
+                           @Value("${cache.disk.compaction-live-ratio:0.5}") double compactionLiveRatio,
+                           @Value("${cache.expiration.minutes:10}") long expirationMinutes,
+                           @Value("${cache.stale-grace.minutes:5}") long staleGraceMinutes) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.compactionLiveRatio = compactionLiveRatio;
+        this.retention = Duration.ofMinutes(expirationMinutes + staleGraceMinutes);
+    }
+
+    /**
+     * Opens the existing segments and rebuilds the index from them, oldest first.
+     * On failure the tier is disabled rather than failing the startup.
+     */
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.sorted().toList();
+            }
+            for (Path file : files) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (!name.matches()) {
+                    log.warn("Ignoring {} in the disk result cache directory", file.getFileName());
+                    continue;
+                }
+                long id = Long.parseLong(name.group(1));
+                Segment segment = Segment.open(id, file);
+                segments.put(id, segment);
+                segment.writePosition = recover(segment);
+                // Drop a torn record left at the tail, so appends start on a clean boundary.
+                segment.channel.truncate(segment.writePosition);
+            }
+        } catch (IOException e) {
+            log.error("Disk result cache disabled, could not open {}: {}", directory, e.getMessage());
+            disable();
+            return;
+        }
+        synchronized (this) {
+            active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        }
+        log.info("Disk result cache opened with {} entries in {} segment(s)", index.size(), segments.size());
+    }
+
+    private synchronized void disable() {
+        enabled = false;
+        active = null;
+        index.clear();
+        segments.values().forEach(Segment::close);
+        segments.clear();
+    }
+
+    public BlazegraphCacheService.CachedEntry get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Location location = index.get(key);
+        if (location == null) {
+            misses.increment();
+            return null;
+        }
+        if (isExpired(location.createdAt)) {
+            index.remove(key, location);
+            misses.increment();
+            return null;
+        }
+        Record record = location.segment.read(location.offset);
+        if (record == null || !record.key.equals(key)) {
+            index.remove(key, location);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return record.toEntry();
+    }
+
+    public void put(String key, BlazegraphCacheService.CachedEntry entry) {
+        if (!enabled) {
+            return;
+        }
+        long createdAt = Instant.parse(entry.createdAt).toEpochMilli();
+        if (isExpired(createdAt)) {
+            return;
+        }
+        try {
+            Location location = append(new Record(key, entry.prompt, entry.graphQLResult, createdAt));
+            if (location != null) {
+                index.put(key, location);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write to the disk result cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes segments without live records and rewrites the live records of segments
+     * whose live share dropped below compactionLiveRatio.
+     * A segment is left alone when its scan cannot reach the end of its written data, or when
+     * copying its live records forward would roll the tier past maxBytes and drop the segment itself.
+     */
+    @Scheduled(fixedDelayString = "${cache.disk.compaction-interval-ms:60000}",
+            initialDelayString = "${cache.disk.compaction-interval-ms:60000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        for (Segment segment : segments.values()) {
+            synchronized (this) {
+                if (segment == active) {
+                    continue;
+                }
+            }
+            List<Integer> liveOffsets = new ArrayList<>();
+            List<Location> liveLocations = new ArrayList<>();
+            long liveBytes = 0;
+            int position = 0;
+            int end = segment.writePosition;
+            try {
+                // Headers only, like recovery: a corrupt payload hides no record after it.
+                RecordHeader header;
+                while (position < end && (header = segment.readHeader(position, end)) != null) {
+                    Location location = index.get(new String(header.key, StandardCharsets.UTF_8));
+                    if (location != null && location.segment == segment && location.offset == position
+                            && !isExpired(location.createdAt)) {
+                        liveOffsets.add(position);
+                        liveLocations.add(location);
+                        liveBytes += header.size();
+                    }
+                    position += header.size();
+                }
+            } catch (IOException e) {
+                // Deleted or unreadable meanwhile: nothing to compact.
+                continue;
+            }
+            if (position < end) {
+                log.warn("Disk cache segment {} is unreadable at offset {}, not compacting it", segment.file, position);
+                continue;
+            }
+            if (!liveOffsets.isEmpty()
+                    && (liveBytes >= end * compactionLiveRatio || wouldBeDropped(segment, liveBytes))) {
+                continue;
+            }
+            try {
+                for (int i = 0; i < liveOffsets.size(); i++) {
+                    Record record = segment.read(liveOffsets.get(i));
+                    if (record == null) {
+                        // Corrupt: a miss either way, dropped with the segment.
+                        continue;
+                    }
+                    Location moved = append(record);
+                    if (!segments.containsKey(segment.id)) {
+                        // Dropped to make room after all: keep the copy that was just written.
+                        if (moved != null) {
+                            index.putIfAbsent(record.key, moved);
+                        }
+                        break;
+                    }
+                    // Only if no newer write replaced the entry in the meantime.
+                    if (moved != null) {
+                        index.replace(record.key, liveLocations.get(i), moved);
+                    }
+                }
+                if (segments.containsKey(segment.id)) {
+                    delete(segment);
+                }
+            } catch (IOException e) {
+                log.warn("Disk result cache compaction failed: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Estimates whether appending liveBytes would roll the tier often enough to drop the segment
+     * (the oldest segments go first once the tier is at maxBytes).
+     */
+    private synchronized boolean wouldBeDropped(Segment segment, long liveBytes) {
+        long free = active == null ? 0 : segmentBytes - active.writePosition;
+        long rolls = liveBytes <= free ? 0 : 1 + (liveBytes - free) / segmentBytes;
+        long maxSegments = maxBytes / segmentBytes;
+        long dropped = segments.size() + rolls - maxSegments;
+        return segments.headMap(segment.id).size() < dropped;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.force(false);
+            } catch (IOException e) {
+                log.warn("Could not sync disk cache segment {}: {}", segment.file, e.getMessage());
+            }
+            segment.close();
+        }
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        return new CacheStats("result-disk", index.size(), hitCount, missCount, evictions.sum(),
+                requests == 0 ? 1.0 : (double) hitCount / requests);
+    }
+
+    private boolean isExpired(long createdAtMillis) {
+        return Instant.ofEpochMilli(createdAtMillis).plus(retention).isBefore(Instant.now());
+    }
+
+    /**
+     * Appends the record to the active segment, rolling to a new one when it is full.
+     * Returns null when the record is larger than a segment.
+     */
+    private synchronized Location append(Record record) throws IOException {
+        byte[] bytes = record.encode();
+        if (bytes.length > segmentBytes) {
+            return null;
+        }
+        if (active == null || active.writePosition + bytes.length > segmentBytes) {
+            roll();
+        }
+        int offset = active.writePosition;
+        active.write(offset, bytes);
+        active.writePosition = offset + bytes.length;
+        return new Location(active, offset, record.createdAt);
+    }
+
+    private void roll() throws IOException {
+        // Make room for the new segment by dropping the oldest ones.
+        while (!segments.isEmpty() && (long) (segments.size() + 1) * segmentBytes > maxBytes) {
+            delete(segments.firstEntry().getValue());
+        }
+        long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path file = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        active = Segment.open(id, file);
+        segments.put(id, active);
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        index.entrySet().removeIf(entry -> {
+            if (entry.getValue().segment != segment) {
+                return false;
+            }
+            evictions.increment();
+            return true;
+        });
+        // Readers still holding a location in it now get a miss.
+        segment.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    /**
+     * Indexes the records of a segment from their headers and returns the end of its written data
+     * (the start of a torn record, if any).
+     */
+    private int recover(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        int position = 0;
+        RecordHeader header;
+        while ((header = segment.readHeader(position, fileSize)) != null) {
+            String key = new String(header.key, StandardCharsets.UTF_8);
+            if (!isExpired(header.createdAt)) {
+                index.put(key, new Location(segment, position, header.createdAt));
+            } else {
+                index.remove(key);
+            }
+            position += header.size();
+        }
+        return position;
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private volatile FileChannel channel;
+        private volatile int writePosition;
+        // Guarded by this.
+        private boolean closed;
+
+        private Segment(long id, Path file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private static Segment open(long id, Path file) throws IOException {
+            return new Segment(id, file, openChannel(file));
+        }
+
+        private static FileChannel openChannel(Path file) throws IOException {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        private void write(int offset, byte[] bytes) throws IOException {
+            ByteBuffer source = ByteBuffer.wrap(bytes);
+            while (source.hasRemaining()) {
+                channel().write(source, offset + source.position());
+            }
+        }
+
+        /**
+         * Reads and checks the record at the offset, or returns null at the end of the written data,
+         * at a corrupt or torn record, or once the segment is deleted.
+         */
+        private Record read(int offset) {
+            try {
+                RecordHeader header = readHeader(offset, Long.MAX_VALUE);
+                if (header == null) {
+                    return null;
+                }
+                byte[] rest = new byte[Math.max(header.promptLength, 0) + header.valueLength];
+                if (!readFully(ByteBuffer.wrap(rest), offset + HEADER_BYTES + header.key.length)) {
+                    return null;
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(header.key);
+                checksum.update(rest);
+                if ((int) checksum.getValue() != header.crc) {
+                    return null;
+                }
+                String key = new String(header.key, StandardCharsets.UTF_8);
+                int position = 0;
+                String prompt = null;
+                if (header.promptLength >= 0) {
+                    prompt = new String(rest, 0, header.promptLength, StandardCharsets.UTF_8);
+                    position = header.promptLength;
+                }
+                String value = new String(rest, position, header.valueLength, StandardCharsets.UTF_8);
+                return new Record(key, prompt, value, header.createdAt);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Reads the header and key of the record at the offset, or returns null if there is no
+         * well-formed record there ending within limit.
+         */
+        private RecordHeader readHeader(int offset, long limit) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (!readFully(header, offset) || header.getInt(0) != MAGIC) {
+                return null;
+            }
+            int keyLength = header.getInt(4);
+            int promptLength = header.getInt(8);
+            int valueLength = header.getInt(12);
+            if (keyLength <= 0 || promptLength < -1 || valueLength < 0
+                    || offset + HEADER_BYTES + (long) keyLength + Math.max(promptLength, 0) + valueLength > limit) {
+                return null;
+            }
+            byte[] key = new byte[keyLength];
+            if (!readFully(ByteBuffer.wrap(key), offset + HEADER_BYTES)) {
+                return null;
+            }
+            return new RecordHeader(key, promptLength, valueLength, header.getLong(16), header.getInt(24));
+        }
+
+        /**
+         * Fills the buffer from the position; false if the file ends first.
+         */
+        private boolean readFully(ByteBuffer target, long position) throws IOException {
+            while (target.hasRemaining()) {
+                if (channel().read(target, position + target.position()) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The open channel. An interrupted read or write closes a FileChannel for every thread,
+         * so a channel closed that way is reopened unless the segment itself was closed.
+         */
+        private FileChannel channel() throws IOException {
+            FileChannel current = channel;
+            if (current.isOpen()) {
+                return current;
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                if (!channel.isOpen()) {
+                    channel = openChannel(file);
+                }
+                return channel;
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close disk cache segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static final class RecordHeader {
+        private final byte[] key;
+        private final int promptLength;
+        private final int valueLength;
+        private final long createdAt;
+        private final int crc;
+
+        private RecordHeader(byte[] key, int promptLength, int valueLength, long createdAt, int crc) {
+            this.key = key;
+            this.promptLength = promptLength;
+            this.valueLength = valueLength;
+            this.createdAt = createdAt;
+            this.crc = crc;
+        }
+
+        private int size() {
+            return HEADER_BYTES + key.length + Math.max(promptLength, 0) + valueLength;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final long createdAt;
+
+        private Location(Segment segment, int offset, long createdAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class Record {
+        private final String key;
+        private final String prompt;
+        private final String value;
+        private final long createdAt;
+
+        private Record(String key, String prompt, String value, long createdAt) {
+            this.key = key;
+            this.prompt = prompt;
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+
+        private byte[] encode() {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] promptBytes = prompt == null ? new byte[0] : prompt.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer out = ByteBuffer.allocate(
+                    HEADER_BYTES + keyBytes.length + promptBytes.length + valueBytes.length);
+            CRC32 checksum = new CRC32();
+            checksum.update(keyBytes);
+            checksum.update(promptBytes);
+            checksum.update(valueBytes);
+            out.putInt(MAGIC)
+                    .putInt(keyBytes.length)
+                    .putInt(prompt == null ? -1 : promptBytes.length)
+                    .putInt(valueBytes.length)
+                    .putLong(createdAt)
+                    .putInt((int) checksum.getValue())
+                    .put(keyBytes)
+                    .put(promptBytes)
+                    .put(valueBytes);
+            return out.array();
+        }
+
+        private BlazegraphCacheService.CachedEntry toEntry() {
+            return new BlazegraphCacheService.CachedEntry(prompt, value, Instant.ofEpochMilli(createdAt).toString());
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package org.gait.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.config.UpstreamProperties;
+import org.gait.dto.Api;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DataLoader-style micro-batcher in front of {@link GraphQLClient}.
+ * Queries sent to the same API within its batch window are merged into one document,
+ * each under its own alias (q0: user(...) {...} q1: user(...) {...}), sent as a single
+ * HTTP request, and the response is split back so every caller gets
+ * {"data": {"rootField": ...}} exactly as if it had sent its own query.
+ * A response that fails as a whole (no data object, or errors without a path) is not split.
+ * When its errors point into the document (validation or parse failures) each query is re-sent
+ * on its own so one bad query cannot fail the others; any other failure (rate limit, auth,
+ * transport) fails every query of the batch with the upstream error, without further requests.
+ * <p>
+ * Only anonymous queries with a single root field (what {@link QueryPlan} renders) are batched;
+ * anything else, and every API whose batch window is zero, goes straight to the client.
+ */
+@Component
+@Slf4j
+public class GraphQLBatcher {
+
+    // Optional "query" keyword, then the selection set.
+    private static final Pattern ANONYMOUS_QUERY = Pattern.compile("^\\s*(?:query\\s*)?\\{(.*)}\\s*$", Pattern.DOTALL);
+    private static final Pattern ROOT_FIELD = Pattern.compile("^\\s*([_A-Za-z][_0-9A-Za-z]*)");
+
+    private final GraphQLClient graphQLClient;
+    private final ObjectMapper objectMapper;
+    private final Map<Api, Batch> batches = new EnumMap<>(Api.class);
+    private final ScheduledExecutorService scheduler;
+
+    public GraphQLBatcher(GraphQLClient graphQLClient, UpstreamProperties properties, ObjectMapper objectMapper) {
+        this.graphQLClient = graphQLClient;
+        this.objectMapper = objectMapper;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graphql-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        properties.getApis().forEach((api, endpoint) -> {
+            if (!endpoint.getBatchWindow().isZero() && endpoint.getMaxBatchSize() > 1) {
+                batches.put(api, new Batch(api, endpoint.getBatchWindow().toNanos(), endpoint.getMaxBatchSize()));
+            }
+        });
+    }
+
+    /**
+     * Runs the query, possibly merged with other queries for the same API.
+     */
+    public CompletableFuture<String> executeAsync(Api api, String graphQLQuery) {
+        Batch batch = batches.get(api);
+        RootSelection selection = batch != null ? RootSelection.parse(graphQLQuery) : null;
+        if (selection == null) {
+            return graphQLClient.executeAsync(api, graphQLQuery);
+        }
+        return batch.add(selection);
+    }
+
+    /**
+     * Blocking variant of {@link #executeAsync}.
+     */
+    public String execute(Api api, String graphQLQuery) {
+        try {
+            return executeAsync(api, graphQLQuery).join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Queries waiting to be sent to one API.
+     */
+    private final class Batch {
+        private final Api api;
+        private final long windowNanos;
+        private final int maxSize;
+        // Identical selections share one alias and one future.
+        private Map<String, Pending> pending = new LinkedHashMap<>();
+
+        private Batch(Api api, long windowNanos, int maxSize) {
+            this.api = api;
+            this.windowNanos = windowNanos;
+            this.maxSize = maxSize;
+        }
+
+        private CompletableFuture<String> add(RootSelection selection) {
+            Map<String, Pending> full = null;
+            CompletableFuture<String> result;
+            synchronized (this) {
+                Pending existing = pending.get(selection.selection);
+                if (existing != null) {
+                    return existing.result.copy();
+                }
+                Pending added = new Pending(selection);
+                result = added.result;
+                pending.put(selection.selection, added);
+                if (pending.size() == 1) {
+                    // First query of a new batch: the window starts now.
+                    Map<String, Pending> current = pending;
+                    scheduler.schedule(() -> flush(current), windowNanos, TimeUnit.NANOSECONDS);
+                }
+                if (pending.size() >= maxSize) {
+                    full = pending;
+                    pending = new LinkedHashMap<>();
+                }
+            }
+            if (full != null) {
+                flush(full);
+            }
+            return result.copy();
+        }
+
+        private void flush(Map<String, Pending> toSend) {
+            List<Pending> queries;
+            synchronized (this) {
+                if (pending == toSend) {
+                    pending = new LinkedHashMap<>();
+                }
+                // Already sent when the batch filled up before its window elapsed.
+                if (toSend.isEmpty()) {
+                    return;
+                }
+                queries = new ArrayList<>(toSend.values());
+                toSend.clear();
+            }
+            if (queries.size() == 1) {
+                Pending single = queries.get(0);
+                forward(graphQLClient.executeAsync(api, single.selection.query), single);
+                return;
+            }
+
+            log.debug("Sending {} merged queries to {} in one request", queries.size(), api);
+            List<RootSelection> selections = queries.stream().map(query -> query.selection).toList();
+            graphQLClient.executeAsync(api, merge(selections)).whenComplete((response, error) -> {
+                if (error != null) {
+                    queries.forEach(query -> query.result.completeExceptionally(error));
+                    return;
+                }
+                List<String> results;
+                try {
+                    results = split(objectMapper, response, selections);
+                } catch (RuntimeException e) {
+                    queries.forEach(query -> query.result.completeExceptionally(e));
+                    return;
+                }
+                if (results == null) {
+                    String failure = documentFailure(objectMapper, response);
+                    if (failure == null) {
+                        // Some query does not validate, and the error cannot be pinned on it: run each on its own.
+                        log.debug("Merged document for {} does not validate, re-sending {} queries separately",
+                                api, queries.size());
+                        queries.forEach(query -> forward(graphQLClient.executeAsync(api, query.selection.query), query));
+                        return;
+                    }
+                    // Not caused by any one query: re-sending them would only repeat the failure.
+                    ResponseStatusException rejected = new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+                            "GraphQL API " + api + " failed the request: " + failure);
+                    queries.forEach(query -> query.result.completeExceptionally(rejected));
+                    return;
+                }
+                for (int i = 0; i < queries.size(); i++) {
+                    queries.get(i).result.complete(results.get(i));
+                }
+            });
+        }
+
+        private void forward(CompletableFuture<String> response, Pending query) {
+            response.whenComplete((value, error) -> {
+                if (error != null) {
+                    query.result.completeExceptionally(error);
+                } else {
+                    query.result.complete(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Renders the selections as one anonymous query, the i-th under alias qi.
+     * Each selection is copied verbatim: {@link RootSelection#parse} only accepts a single,
+     * well-formed field, so its string arguments are already escaped (see {@link QueryPlan#render}).
+     */
+    static String merge(List<RootSelection> selections) {
+        StringBuilder document = new StringBuilder("query {\n");
+        for (int i = 0; i < selections.size(); i++) {
+            document.append("  q").append(i).append(": ").append(selections.get(i).selection).append("\n");
+        }
+        return document.append("}\n").toString();
+    }
+
+    /**
+     * Splits a merged response into one response per selection: the data under its alias,
+     * renamed back to its root field, together with the errors whose path starts at that alias.
+     * Returns null when the response cannot be attributed per query, i.e. when data is not an
+     * object (validation and parse errors fail the whole document) or some error has no path
+     * starting at one of the aliases.
+     */
+    static List<String> split(ObjectMapper objectMapper, String response, List<RootSelection> selections) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JsonNode data = root.path("data");
+        JsonNode errors = root.path("errors");
+        if (!data.isObject()) {
+            return null;
+        }
+        for (JsonNode error : errors) {
+            JsonNode path = error.path("path");
+            if (!path.isArray() || path.isEmpty() || !isAlias(path.get(0).asText(), selections.size())) {
+                return null;
+            }
+        }
+
+        List<String> results = new ArrayList<>(selections.size());
+        for (int i = 0; i < selections.size(); i++) {
+            RootSelection selection = selections.get(i);
+            String alias = "q" + i;
+
+            ObjectNode result = objectMapper.createObjectNode();
+            result.putObject("data").set(selection.rootField, data.get(alias));
+            ArrayNode ownErrors = objectMapper.createArrayNode();
+            for (JsonNode error : errors) {
+                if (alias.equals(error.path("path").get(0).asText())) {
+                    ObjectNode renamed = error.deepCopy();
+                    ((ArrayNode) renamed.get("path")).set(0, selection.rootField);
+                    ownErrors.add(renamed);
+                }
+            }
+            if (!ownErrors.isEmpty()) {
+                result.set("errors", ownErrors);
+            }
+            try {
+                results.add(objectMapper.writeValueAsString(result));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return results;
+    }
+
+    private static boolean isAlias(String name, int count) {
+        for (int i = 0; i < count; i++) {
+            if (name.equals("q" + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Classifies a response that {@link #split} refused. Returns null when every error points into
+     * the document (it has source locations, or a parse/validation code), i.e. some query is invalid;
+     * otherwise returns the first error message (or a description of the response) to fail the batch with.
+     */
+    static String documentFailure(ObjectMapper objectMapper, String response) {
+        JsonNode errors;
+        try {
+            errors = objectMapper.readTree(response).path("errors");
+        } catch (IOException e) {
+            return "unreadable response";
+        }
+        if (!errors.isArray() || errors.isEmpty()) {
+            return "no data";
+        }
+        for (JsonNode error : errors) {
+            String code = error.path("extensions").path("code").asText();
+            boolean inDocument = error.path("locations").isArray() && !error.path("locations").isEmpty()
+                    || "GRAPHQL_PARSE_FAILED".equals(code) || "GRAPHQL_VALIDATION_FAILED".equals(code);
+            if (!inDocument) {
+                return error.path("message").asText("unknown error");
+            }
+        }
+        return null;
+    }
+
+    private static final class Pending {
+        private final RootSelection selection;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private Pending(RootSelection selection) {
+            this.selection = selection;
+        }
+    }
+
+    /**
+     * The single root selection of an anonymous query, e.g. user(login: "x") { ... }.
+     */
+    static final class RootSelection {
+        final String query;
+        final String rootField;
+        final String selection;
+
+        private RootSelection(String query, String rootField, String selection) {
+            this.query = query;
+            this.rootField = rootField;
+            this.selection = selection;
+        }
+
+        /**
+         * Returns null when the query is not an anonymous query with exactly one root field.
+         */
+        static RootSelection parse(String query) {
+            Matcher document = ANONYMOUS_QUERY.matcher(query);
+            if (!document.matches()) {
+                return null;
+            }
+            String body = document.group(1).strip();
+            Matcher field = ROOT_FIELD.matcher(body);
+            if (!field.find() || !isSingleSelection(body)) {
+                return null;
+            }
+            return new RootSelection(query, field.group(1), body);
+        }
+
+        /**
+         * True when the body is one field: its brace-delimited selection set, if any, closes at the very end.
+         */
+        private static boolean isSingleSelection(String body) {
+            int depth = 0;
+            boolean inString = false;
+            boolean sawSelectionSet = false;
+            for (int i = 0; i < body.length(); i++) {
+                char c = body.charAt(i);
+                if (inString) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                if (c == '"') {
+                    inString = true;
+                } else if (c == '{') {
+                    if (depth == 0 && sawSelectionSet) {
+                        return false;
+                    }
+                    depth++;
+                    sawSelectionSet = true;
+                } else if (c == '}') {
+                    depth--;
+                    if (depth == 0 && i != body.length() - 1) {
+                        return false;
+                    }
+                } else if (c == '#' && depth == 0) {
+                    return false;
+                }
+            }
+            return sawSelectionSet && depth == 0;
+        }
+    }
+}
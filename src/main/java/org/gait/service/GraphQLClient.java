@@ -0,0 +1,296 @@
+package org.gait.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.config.UpstreamProperties;
+import org.gait.dto.Api;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Outbound client for the external GraphQL APIs.
+ * Each API gets its own {@link HttpClient}, i.e. its own keep-alive connection pool,
+ * negotiating HTTP/2 where the server supports it and asking for gzip-compressed responses.
+ * Connect, read (response headers) and total timeouts are enforced per API, and the number of
+ * requests in flight is capped so one slow upstream cannot hold every worker thread.
+ * Every call is recorded by API and status in {@link PipelineMetrics}.
+ */
+@Component
+@Slf4j
+public class GraphQLClient {
+
+    private final ObjectMapper objectMapper;
+    private final PipelineMetrics pipelineMetrics;
+    private final Map<Api, Upstream> upstreams = new EnumMap<>(Api.class);
+    private final ExecutorService ioExecutor;
+
+    public GraphQLClient(UpstreamProperties properties, ObjectMapper objectMapper, PipelineMetrics pipelineMetrics) {
+        this.objectMapper = objectMapper;
+        this.pipelineMetrics = pipelineMetrics;
+        // A fixed pool: thousands of requests in flight must not mean thousands of threads
+        AtomicInteger threadCount = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(properties.getIoThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "upstream-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        properties.getApis().forEach((api, endpoint) -> upstreams.put(api, new Upstream(endpoint, ioExecutor)));
+    }
+
+    /**
+     * Runs the query and waits for the result (bounded by the API's total timeout).
+     */
+    public String execute(Api api, String graphQLQuery) {
+        try {
+            return executeAsync(api, graphQLQuery).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the query without blocking the caller.
+     * The future fails with a {@link ResponseStatusException}: 504 on timeout,
+     * 502 on a transport error or a non-2xx answer, 503 when the API is at its concurrency limit.
+     */
+    public CompletableFuture<String> executeAsync(Api api, String graphQLQuery) {
+        Upstream upstream = upstreams.get(api);
+        if (upstream == null) {
+            return CompletableFuture.failedFuture(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "No upstream configured for API " + api));
+        }
+        if (!upstream.permits.tryAcquire()) {
+            pipelineMetrics.upstreamRequest(api, "rejected", Duration.ZERO);
+            return CompletableFuture.failedFuture(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many requests in flight to " + api));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<byte[]>> exchange;
+        try {
+            exchange = upstream.client.sendAsync(upstream.request(body(graphQLQuery)),
+                    HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            upstream.permits.release();
+            throw e;
+        }
+        exchange.whenComplete((response, error) -> upstream.permits.release());
+
+        long totalTimeoutMs = upstream.endpoint.getTotalTimeout().toMillis();
+        return exchange
+                .thenApply(response -> decode(api, response))
+                .orTimeout(totalTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    HttpResponse<byte[]> response = exchange.isDone() && !exchange.isCompletedExceptionally()
+                            ? exchange.join() : null;
+                    pipelineMetrics.upstreamRequest(api,
+                            response != null ? String.valueOf(response.statusCode()) : failureStatus(error),
+                            Duration.ofNanos(System.nanoTime() - start));
+                    if (error != null) {
+                        // Aborts the exchange if it is still running (total timeout)
+                        exchange.cancel(true);
+                    }
+                })
+                .exceptionally(error -> {
+                    throw toStatusException(api, error);
+                });
+    }
+
+    /**
+     * Sends the query and returns the (decompressed) response body as a stream, without buffering it.
+     * Blocks until the response headers arrive (read timeout). The stream is closed, aborting the
+     * exchange, once the total timeout elapses; the caller must close it when done.
+     */
+    public InputStream openStream(Api api, String graphQLQuery) {
+        Upstream upstream = upstreams.get(api);
+        if (upstream == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No upstream configured for API " + api);
+        }
+        if (!upstream.permits.tryAcquire()) {
+            pipelineMetrics.upstreamRequest(api, "rejected", Duration.ZERO);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests in flight to " + api);
+        }
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                upstream.permits.release();
+            }
+        };
+        try {
+            HttpResponse<InputStream> response = upstream.client.send(upstream.request(body(graphQLQuery)),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            // Time to the response headers; the body is streamed to the client afterwards.
+            pipelineMetrics.upstreamRequest(api, String.valueOf(response.statusCode()),
+                    Duration.ofNanos(System.nanoTime() - start));
+            InputStream body = response.body();
+            if (response.statusCode() / 100 != 2) {
+                body.close();
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+                        "GraphQL API " + api + " answered " + response.statusCode());
+            }
+            boolean gzipped = response.headers().firstValue("Content-Encoding")
+                    .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                    .orElse(false);
+            InputStream stream = new FilterInputStream(gzipped ? new GZIPInputStream(body) : body) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release.run();
+                    }
+                }
+            };
+            CompletableFuture.delayedExecutor(upstream.endpoint.getTotalTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> {
+                        if (!released.get()) {
+                            log.warn("GraphQL API {} stream exceeded its total timeout, aborting", api);
+                            closeQuietly(stream);
+                        }
+                    });
+            return stream;
+        } catch (ResponseStatusException e) {
+            release.run();
+            throw e;
+        } catch (InterruptedException e) {
+            release.run();
+            Thread.currentThread().interrupt();
+            pipelineMetrics.upstreamRequest(api, failureStatus(e), Duration.ofNanos(System.nanoTime() - start));
+            throw toStatusException(api, e);
+        } catch (IOException | RuntimeException e) {
+            release.run();
+            pipelineMetrics.upstreamRequest(api, failureStatus(e), Duration.ofNanos(System.nanoTime() - start));
+            throw toStatusException(api, e);
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Already failing or closed
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
+
+    private String body(String graphQLQuery) {
+        try {
+            return objectMapper.writeValueAsString(Map.of("query", graphQLQuery));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String decode(Api api, HttpResponse<byte[]> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+                    "GraphQL API " + api + " answered " + response.statusCode());
+        }
+        byte[] body = response.body();
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzipped) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Status tag of a call that got no response: timeout or error.
+     */
+    private static String failureStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TimeoutException || cause instanceof HttpTimeoutException ? "timeout" : "error";
+    }
+
+    private ResponseStatusException toStatusException(Api api, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ResponseStatusException statusException) {
+            return statusException;
+        }
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            log.warn("GraphQL API {} timed out: {}", api, cause.toString());
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "GraphQL API " + api + " timed out");
+        }
+        log.warn("GraphQL API {} call failed: {}", api, cause.toString());
+        return new ResponseStatusException(HttpStatus.BAD_GATEWAY, "GraphQL API " + api + " call failed");
+    }
+
+    /**
+     * Client, limits and request template of one API.
+     */
+    private static final class Upstream {
+        private final UpstreamProperties.Endpoint endpoint;
+        private final URI uri;
+        private final HttpClient client;
+        private final Semaphore permits;
+
+        private Upstream(UpstreamProperties.Endpoint endpoint, Executor executor) {
+            this.endpoint = endpoint;
+            this.uri = URI.create(endpoint.getUrl());
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(endpoint.getConnectTimeout())
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .executor(executor)
+                    .build();
+            this.permits = new Semaphore(endpoint.getMaxConcurrent());
+        }
+
+        private HttpRequest request(String body) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                    .timeout(endpoint.getReadTimeout())
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "application/json")
+                    .header("Accept-Encoding", "gzip")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+            if (StringUtils.hasText(endpoint.getToken())) {
+                builder.header("Authorization", "Bearer " + endpoint.getToken());
+            }
+            return builder.build();
+        }
+    }
+}
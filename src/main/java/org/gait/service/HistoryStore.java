@@ -0,0 +1,31 @@
+package org.gait.service;
+
+import org.gait.dto.Api;
+import org.gait.dto.CursorPage;
+import org.gait.service.UserHistoryService.PopularPrompt;
+import org.gait.service.UserHistoryService.UserHistoryEntry;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Storage backend of the user prompt history.
+ */
+public interface HistoryStore {
+
+    /**
+     * Appends one record per prompt sent to the API, all timestamped now. May be written asynchronously.
+     */
+    void save(String userId, Api api, List<String> prompts);
+
+    /**
+     * One page of the user's records, most recent first, optionally within [from, to).
+     * The cursor format is private to each store.
+     */
+    CursorPage<UserHistoryEntry> find(String userId, Instant from, Instant to, String cursor, int limit);
+
+    /**
+     * The prompts sent to the API most often since the given instant, across all users, most used first.
+     */
+    List<PopularPrompt> findPopular(Api api, Instant since, int limit);
+}
@@ -0,0 +1,216 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.gait.database.service.JdbcBatchWriter;
+import org.gait.dto.Api;
+import org.gait.dto.CursorPage;
+import org.gait.service.UserHistoryService.PopularPrompt;
+import org.gait.service.UserHistoryService.UserHistoryEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * History kept in Postgres (history.store=jdbc), in the user_history table range-partitioned by month.
+ * Records are queued and written with batched JDBC inserts (see {@link JdbcBatchWriter}: a record the database
+ * refuses on its own is dropped, records not written while it is unreachable are retried by the queue);
+ * pages are read through the (user_id, created_at, id) index, most recent first.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "history.store", havingValue = "jdbc")
+public class JdbcHistoryStore implements HistoryStore {
+
+    private static final String INSERT_HISTORY =
+            "INSERT INTO user_history (user_id, api, prompt, created_at) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_POPULAR =
+            "SELECT prompt, COUNT(*) AS uses FROM user_history WHERE api = ? AND created_at >= ? " +
+            "GROUP BY prompt ORDER BY uses DESC LIMIT ?";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcBatchWriter jdbcBatchWriter;
+    private final WriteBehindQueue<HistoryRecord> queue;
+    private final int partitionsAhead;
+
+    public JdbcHistoryStore(JdbcTemplate jdbcTemplate,
+                            JdbcBatchWriter jdbcBatchWriter,
+                            @Value("${history.jdbc.write-behind.capacity:10000}") int capacity,
+                            @Value("${history.jdbc.write-behind.batch-size:500}") int batchSize,
+                            @Value("${history.jdbc.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${history.jdbc.write-behind.offer-timeout-ms:50}") long offerTimeoutMs,
+                            @Value("${history.jdbc.write-behind.max-attempts:5}") int maxAttempts,
+                            @Value("${history.jdbc.write-behind.retry-backoff-ms:1000}") long retryBackoffMs,
+                            @Value("${history.jdbc.partitions-ahead:2}") int partitionsAhead,
+                            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcBatchWriter = jdbcBatchWriter;
+        this.partitionsAhead = partitionsAhead;
+        this.queue = new WriteBehindQueue<>("history-jdbc", capacity, batchSize, flushIntervalMs, offerTimeoutMs,
+                maxAttempts, retryBackoffMs, this::insert, meterRegistry);
+    }
+
+    @Override
+    public void save(String userId, Api api, List<String> prompts) {
+        long id = parseUserId(userId);
+        Instant createdAt = Instant.now();
+        for (String prompt : prompts) {
+            // Postgres text cannot hold NUL characters; the whole batch would be refused.
+            queue.submit(new HistoryRecord(id, api, prompt.replace("\u0000", ""), createdAt));
+        }
+    }
+
+    @Override
+    public CursorPage<UserHistoryEntry> find(String userId, Instant from, Instant to, String cursor, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT id, prompt, created_at FROM user_history WHERE user_id = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(parseUserId(userId));
+        if (from != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.from(from));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.from(to));
+        }
+        if (cursor != null) {
+            HistoryCursor after = HistoryCursor.decode(cursor);
+            sql.append(" AND (created_at, id) < (?, ?)");
+            args.add(Timestamp.from(after.createdAt));
+            args.add(after.id);
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(limit);
+
+        List<Long> ids = new ArrayList<>();
+        List<Instant> timestamps = new ArrayList<>();
+        List<UserHistoryEntry> entries = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Instant createdAt = rs.getTimestamp("created_at").toInstant();
+            ids.add(rs.getLong("id"));
+            timestamps.add(createdAt);
+            return new UserHistoryEntry(userId, rs.getString("prompt"), createdAt.toString());
+        }, args.toArray());
+
+        String nextCursor = null;
+        if (entries.size() == limit) {
+            int last = entries.size() - 1;
+            nextCursor = new HistoryCursor(timestamps.get(last), ids.get(last)).encode();
+        }
+        return new CursorPage<>(entries, nextCursor);
+    }
+
+    /**
+     * Only the partitions overlapping [since, now] are scanned, through the (api, created_at) index.
+     */
+    @Override
+    public List<PopularPrompt> findPopular(Api api, Instant since, int limit) {
+        return jdbcTemplate.query(SELECT_POPULAR,
+                (rs, rowNum) -> new PopularPrompt(rs.getString("prompt"), rs.getLong("uses")),
+                api.name(), Timestamp.from(since), limit);
+    }
+
+    /**
+     * Creates the monthly partitions for the current month and the next ones, so inserts
+     * land in their own partition rather than in user_history_default.
+     */
+    @PostConstruct
+    @Scheduled(cron = "${history.jdbc.partition-cron:0 0 3 * * *}")
+    public void ensurePartitions() {
+        YearMonth month = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= partitionsAhead; i++) {
+            YearMonth partition = month.plusMonths(i);
+            LocalDate start = partition.atDay(1);
+            LocalDate end = partition.plusMonths(1).atDay(1);
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_history_" + partition.format(PARTITION_SUFFIX) +
+                        " PARTITION OF user_history FOR VALUES FROM ('" + start + " 00:00:00+00') TO ('" +
+                        end + " 00:00:00+00')");
+            } catch (Exception e) {
+                log.warn("Could not create history partition for {}: {}", partition, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queue.close();
+    }
+
+    private List<HistoryRecord> insert(List<HistoryRecord> records) {
+        return jdbcBatchWriter.write(INSERT_HISTORY, records, (ps, record) -> {
+            ps.setLong(1, record.userId);
+            ps.setString(2, record.api.name());
+            ps.setString(3, record.prompt);
+            ps.setTimestamp(4, Timestamp.from(record.createdAt));
+        });
+    }
+
+    private static long parseUserId(String userId) {
+        try {
+            return Long.parseLong(userId);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid user id: " + userId);
+        }
+    }
+
+    private static final class HistoryRecord {
+        private final long userId;
+        private final Api api;
+        private final String prompt;
+        private final Instant createdAt;
+
+        private HistoryRecord(long userId, Api api, String prompt, Instant createdAt) {
+            this.userId = userId;
+            this.api = api;
+            this.prompt = prompt;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Position after the last record of a page: its timestamp and id (tie-breaker), base64url-encoded.
+     */
+    private static final class HistoryCursor {
+        private final Instant createdAt;
+        private final long id;
+
+        private HistoryCursor(Instant createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        private String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((createdAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static HistoryCursor decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('|');
+                return new HistoryCursor(Instant.parse(decoded.substring(0, separator)),
+                        Long.parseLong(decoded.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.gait.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.gait.dto.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * In-heap L1 cache in front of Blazegraph.
+ * Eviction is frequency-aware (Caffeine's W-TinyLFU) and bounded by the total payload size,
+ * and every entry expires at the same instant as its Blazegraph counterpart
+ * (TTL plus the stale grace window).
+ */
+@Component
+public class LocalResultCache implements CacheStatsProvider {
+
+    private final Cache<String, BlazegraphCacheService.CachedEntry> entries;
+    private final Duration retention;
+
+    public LocalResultCache(@Value("${cache.l1.max-bytes:67108864}") long maxBytes,
+                            @Value("${cache.expiration.minutes:10}") long expirationMinutes,
+                            @Value("${cache.stale-grace.minutes:5}") long staleGraceMinutes) {
+        this.retention = Duration.ofMinutes(expirationMinutes + staleGraceMinutes);
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                // JSON payloads are mostly ASCII, stored as one byte per char by compact strings.
+                .weigher((String key, BlazegraphCacheService.CachedEntry entry) ->
+                        key.length() + entry.graphQLResult.length())
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+    }
+
+    public BlazegraphCacheService.CachedEntry get(String key) {
+        return entries.getIfPresent(key);
+    }
+
+    public void put(String key, BlazegraphCacheService.CachedEntry entry) {
+        if (remainingTtl(entry) > 0) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void invalidate(String key) {
+        entries.invalidate(key);
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = entries.stats();
+        return new CacheStats("result-l1", entries.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+    private long remainingTtl(BlazegraphCacheService.CachedEntry entry) {
+        Instant expiresAt = Instant.parse(entry.createdAt).plus(retention);
+        return Math.max(0L, Duration.between(Instant.now(), expiresAt).toNanos());
+    }
+
+    /**
+     * Expires an entry at createdAt + retention, whatever the time it entered the L1.
+     */
+    private class EntryExpiry implements Expiry<String, BlazegraphCacheService.CachedEntry> {
+
+        @Override
+        public long expireAfterCreate(String key, BlazegraphCacheService.CachedEntry entry, long currentTime) {
+            return remainingTtl(entry);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, BlazegraphCacheService.CachedEntry entry,
+                                      long currentTime, long currentDuration) {
+            return remainingTtl(entry);
+        }
+
+        @Override
+        public long expireAfterRead(String key, BlazegraphCacheService.CachedEntry entry,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.gait.service;
+
+import java.util.Map;
+
+/**
+ * Immutable, pre-compiled view of one API's GraphQL ontology.
+ * Every lookup is a hash probe on the concept's rdfs:label.
+ */
+public final class OntologyMapping {
+
+    private final long generation;
+    private final Map<String, TargetMapping> targets;
+    private final Map<String, SubEntityMapping> subEntities;
+    private final Map<String, ConstraintMapping> constraints;
+
+    public OntologyMapping(long generation,
+                           Map<String, TargetMapping> targets,
+                           Map<String, SubEntityMapping> subEntities,
+                           Map<String, ConstraintMapping> constraints) {
+        this.generation = generation;
+        this.targets = Map.copyOf(targets);
+        this.subEntities = Map.copyOf(subEntities);
+        this.constraints = Map.copyOf(constraints);
+    }
+
+    /**
+     * Increases every time the ontology is (re)loaded, so derived data can detect staleness.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public TargetMapping target(String label) {
+        return label == null ? null : targets.get(label);
+    }
+
+    public SubEntityMapping subEntity(String label) {
+        return label == null ? null : subEntities.get(label);
+    }
+
+    public ConstraintMapping constraint(String label) {
+        return label == null ? null : constraints.get(label);
+    }
+
+    /**
+     * Mapping of a target concept (e.g. "user") to its root field and identifier argument.
+     */
+    public static class TargetMapping {
+        public final String field;
+        public final String identifierArgument;
+
+        public TargetMapping(String field, String identifierArgument) {
+            this.field = field;
+            this.identifierArgument = identifierArgument;
+        }
+    }
+
+    /**
+     * Mapping of a sub-entity concept (e.g. "repositories") to its GraphQL field and type.
+     */
+    public static class SubEntityMapping {
+        public final String field;
+        public final String graphqlType;
+
+        public SubEntityMapping(String field, String graphqlType) {
+            this.field = field;
+            this.graphqlType = graphqlType;
+        }
+    }
+
+    /**
+     * Mapping of a constraint (e.g. "most starred") to an ordering argument.
+     */
+    public static class ConstraintMapping {
+        public final String argumentField;
+        public final String orderingField;
+        public final String defaultDirection;
+
+        public ConstraintMapping(String argumentField, String orderingField, String defaultDirection) {
+            this.argumentField = argumentField;
+            this.orderingField = orderingField;
+            this.defaultDirection = defaultDirection;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.gait.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.gait.dto.Api;
+import org.gait.vocabulary.GraphQLOntology;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Loads the per-API GraphQL ontologies once at startup and keeps an immutable
+ * {@link OntologyMapping} for each of them. The ontology files are polled for
+ * changes and, when one changes, the whole index is rebuilt and swapped atomically.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OntologyMappingService {
+
+    private static final String PREFIXES = "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> ";
+
+    private final ResourceLoader resourceLoader;
+    private final Environment environment;
+
+    private final AtomicLong generations = new AtomicLong();
+    private volatile Map<Api, OntologyMapping> index = Map.of();
+    private volatile Map<Api, Long> lastModified = Map.of();
+
+    /**
+     * Builds the initial index. A broken ontology fails the startup.
+     */
+    @PostConstruct
+    public void load() {
+        try {
+            rebuild();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading ontologies: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the current mapping for the given API.
+     */
+    public OntologyMapping forApi(Api api) {
+        return index.get(api);
+    }
+
+    /**
+     * Reloads the index if any ontology file changed since the last load.
+     * On error the previous index stays in place.
+     */
+    @Scheduled(fixedDelayString = "${ontology.reload-interval-ms:30000}",
+            initialDelayString = "${ontology.reload-interval-ms:30000}")
+    public void reloadIfChanged() {
+        Map<Api, Long> current = new EnumMap<>(Api.class);
+        for (Api api : Api.values()) {
+            current.put(api, lastModified(resourceFor(api)));
+        }
+        if (current.equals(lastModified)) {
+            return;
+        }
+        try {
+            rebuild();
+            log.info("Ontology index reloaded (generation {})", generations.get());
+        } catch (IOException | RuntimeException e) {
+            log.error("Ontology reload failed, keeping previous index: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void rebuild() throws IOException {
+        long generation = generations.incrementAndGet();
+        Map<Api, OntologyMapping> newIndex = new EnumMap<>(Api.class);
+        Map<Api, Long> newLastModified = new EnumMap<>(Api.class);
+        for (Api api : Api.values()) {
+            Resource resource = resourceFor(api);
+            newLastModified.put(api, lastModified(resource));
+            Model model = ModelFactory.createDefaultModel();
+            try (InputStream in = resource.getInputStream()) {
+                model.read(in, null, "TTL");
+            }
+            newIndex.put(api, compile(model, generation));
+        }
+        index = Map.copyOf(newIndex);
+        lastModified = newLastModified;
+    }
+
+    private Resource resourceFor(Api api) {
+        String name = api.name().toLowerCase(Locale.ROOT);
+        String location = environment.getProperty("ontology." + name + ".location",
+                "classpath:ontology/graphQLOntology_" + name + ".ttl");
+        return resourceLoader.getResource(location);
+    }
+
+    private long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Runs the mapping queries once over the whole model and indexes the results by label.
+     * The first solution for a label wins, as with the former per-request queries.
+     */
+    private OntologyMapping compile(Model model, long generation) {
+        Map<String, OntologyMapping.TargetMapping> targets = new HashMap<>();
+        select(model, "SELECT ?label ?targetField ?identifierArgument WHERE { " +
+                "  ?concept rdfs:label ?label ; " +
+                "           <" + GraphQLOntology.mapsToField + "> ?targetField ; " +
+                "           <" + GraphQLOntology.identifierArgument + "> ?identifierArgument . " +
+                "}", sol -> targets.putIfAbsent(sol.getLiteral("label").getString(),
+                new OntologyMapping.TargetMapping(
+                        sol.getLiteral("targetField").getString(),
+                        sol.getLiteral("identifierArgument").getString())));
+
+        Map<String, OntologyMapping.SubEntityMapping> subEntities = new HashMap<>();
+        select(model, "SELECT ?label ?subEntityField ?graphqlType WHERE { " +
+                "  ?concept rdfs:label ?label ; " +
+                "           <" + GraphQLOntology.mapsToGraphQLType + "> ?graphqlType ; " +
+                "           <" + GraphQLOntology.mapsToField + "> ?subEntityField . " +
+                "}", sol -> subEntities.putIfAbsent(sol.getLiteral("label").getString(),
+                new OntologyMapping.SubEntityMapping(
+                        sol.getLiteral("subEntityField").getString(),
+                        sol.getLiteral("graphqlType").getString())));
+
+        Map<String, OntologyMapping.ConstraintMapping> constraints = new HashMap<>();
+        select(model, "SELECT ?label ?argumentField ?orderingField ?defaultDirection WHERE { " +
+                "  ?concept rdfs:label ?label ; " +
+                "           <" + GraphQLOntology.mapsToArgumentField + "> ?argumentField ; " +
+                "           <" + GraphQLOntology.mapsToOrderingField + "> ?orderingField ; " +
+                "           <" + GraphQLOntology.defaultDirection + "> ?defaultDirection . " +
+                "}", sol -> constraints.putIfAbsent(sol.getLiteral("label").getString(),
+                new OntologyMapping.ConstraintMapping(
+                        sol.getLiteral("argumentField").getString(),
+                        sol.getLiteral("orderingField").getString(),
+                        sol.getLiteral("defaultDirection").getString())));
+
+        return new OntologyMapping(generation, targets, subEntities, constraints);
+    }
+
+    private void select(Model model, String sparql, Consumer<QuerySolution> consumer) {
+        Query query = QueryFactory.create(PREFIXES + sparql);
+        try (QueryExecution qexec = QueryExecutionFactory.create(query, model)) {
+            ResultSet results = qexec.execSelect();
+            while (results.hasNext()) {
+                consumer.accept(results.nextSolution());
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.gait.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes cached GraphQL results for storage in Blazegraph.
+ * Payloads of at least minBytes are deflated and base64-encoded (stored as xsd:base64Binary);
+ * smaller ones, and those that do not shrink, are stored as plain strings.
+ * The codec is recorded with each result so both forms can be read back.
+ */
+@Component
+public class PayloadCodec {
+
+    public static final String IDENTITY = "identity";
+    public static final String DEFLATE = "deflate";
+
+    private final int minBytes;
+    private final int level;
+
+    public PayloadCodec(@Value("${cache.compression.min-bytes:1024}") int minBytes,
+                        @Value("${cache.compression.level:6}") int level) {
+        this.minBytes = minBytes;
+        this.level = level;
+    }
+
+    /**
+     * Returns the stored form of the payload and the codec that produced it.
+     */
+    public Encoded encode(String payload) {
+        byte[] raw = payload.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < minBytes) {
+            return new Encoded(IDENTITY, payload);
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            String encoded = Base64.getEncoder().encodeToString(out.toByteArray());
+            // Base64 adds a third: only keep the compressed form when it is actually smaller.
+            return encoded.length() < payload.length() ? new Encoded(DEFLATE, encoded) : new Encoded(IDENTITY, payload);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Restores the payload from its stored form; a missing codec means a plain string.
+     */
+    public String decode(String codec, String stored) {
+        if (codec == null || IDENTITY.equals(codec)) {
+            return stored;
+        }
+        if (!DEFLATE.equals(codec)) {
+            throw new IllegalArgumentException("Unknown cache payload codec: " + codec);
+        }
+        byte[] compressed = Base64.getDecoder().decode(stored);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed cache payload");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed cache payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A payload in its stored form.
+     */
+    public static class Encoded {
+        public final String codec;
+        public final String value;
+
+        public Encoded(String codec, String value) {
+            this.codec = codec;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.gait.dto.Api;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Micrometer meters of the prompt pipeline, exposed under /actuator/metrics and /actuator/prometheus:
+ * <ul>
+ *   <li>gait.pipeline.stage{stage}: latency and throughput of each pipeline stage</li>
+ *   <li>gait.cache.lookups{tier, result} and gait.cache.hit_ratio{tier}: hits and misses per cache tier</li>
+ *   <li>gait.upstream.requests{api, status}: upstream GraphQL calls by API and status code
+ *       (or timeout, error, rejected)</li>
+ * </ul>
+ * Stage timers and cache counters are registered once, so recording is a plain field access.
+ */
+@Component
+public class PipelineMetrics {
+
+    public enum Stage {
+        CACHE_LOOKUP,
+        NLP_CALL,
+        ONTOLOGY_MAPPING,
+        GRAPHQL_BUILD,
+        UPSTREAM_CALL,
+        CACHE_WRITE,
+        HISTORY_WRITE,
+        COUNTER_UPDATE
+    }
+
+    public enum Tier {
+        L1,
+        DISK,
+        L2
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Tier, Counter> hits = new EnumMap<>(Tier.class);
+    private final Map<Tier, Counter> misses = new EnumMap<>(Tier.class);
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("gait.pipeline.stage")
+                    .tag("stage", tagValue(stage))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        for (Tier tier : Tier.values()) {
+            Counter tierHits = Counter.builder("gait.cache.lookups")
+                    .tag("tier", tagValue(tier))
+                    .tag("result", "hit")
+                    .register(meterRegistry);
+            Counter tierMisses = Counter.builder("gait.cache.lookups")
+                    .tag("tier", tagValue(tier))
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+            hits.put(tier, tierHits);
+            misses.put(tier, tierMisses);
+            Gauge.builder("gait.cache.hit_ratio", () -> {
+                        double lookups = tierHits.count() + tierMisses.count();
+                        return lookups == 0 ? 0.0 : tierHits.count() / lookups;
+                    })
+                    .tag("tier", tagValue(tier))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * The timer of a stage, for {@link Timer#record(java.util.function.Supplier)} or a {@link Timer.Sample}.
+     */
+    public Timer timer(Stage stage) {
+        return stageTimers.get(stage);
+    }
+
+    /**
+     * Counts a lookup in a cache tier; a null entry is a miss.
+     */
+    public void cacheLookup(Tier tier, Object entry) {
+        (entry != null ? hits : misses).get(tier).increment();
+    }
+
+    /**
+     * Records an upstream GraphQL call by API and outcome: the HTTP status code,
+     * or timeout, error or rejected when no status was received.
+     */
+    public void upstreamRequest(Api api, String status, Duration duration) {
+        Timer.builder("gait.upstream.requests")
+                .tag("api", tagValue(api))
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(duration);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,48 @@
+package org.gait.service;
+
+/**
+ * A finished GraphQL document with the target identifier left as a hole.
+ * Rendering is a single concatenation, so a cached plan skips all ontology lookups and query building.
+ */
+public final class QueryPlan {
+
+    private final String prefix;
+    private final String suffix;
+
+    public QueryPlan(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Binds the identifier, escaped as the content of a GraphQL string literal, and returns the GraphQL document.
+     */
+    public String render(String identifier) {
+        return prefix + escape(String.valueOf(identifier)) + suffix;
+    }
+
+    /**
+     * Escapes quotes, backslashes and control characters, so the value cannot end the literal it is placed in.
+     */
+    static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
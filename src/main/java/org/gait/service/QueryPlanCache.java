@@ -0,0 +1,70 @@
+package org.gait.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.gait.dto.Api;
+import org.gait.dto.CacheStats;
+import org.gait.dto.NLPResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of {@link QueryPlan}s keyed on the canonical shape of an {@link NLPResponse}
+ * (everything except the identifier, which is bound at render time).
+ */
+@Component
+public class QueryPlanCache implements CacheStatsProvider {
+
+    private final Cache<PlanKey, QueryPlan> plans;
+
+    public QueryPlanCache(@Value("${plan-cache.max-entries:1000}") long maxEntries) {
+        this.plans = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached plan for the response's shape, computing it on a miss.
+     * The ontology generation is part of the key, so a reload never serves a stale plan.
+     */
+    public QueryPlan get(Api api, long ontologyGeneration, NLPResponse response, Supplier<QueryPlan> planner) {
+        return plans.get(PlanKey.of(api, ontologyGeneration, response), key -> planner.get());
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = plans.stats();
+        return new CacheStats("query-plan", plans.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+    /**
+     * Canonical form of an NLP response: only the first constraint is used for planning.
+     */
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class PlanKey {
+        private final Api api;
+        private final long ontologyGeneration;
+        private final String target;
+        private final String subEntity;
+        private final String constraint;
+        private final List<String> fields;
+        private final int limit;
+
+        static PlanKey of(Api api, long ontologyGeneration, NLPResponse response) {
+            List<String> constraints = response.getConstraints();
+            String constraint = (constraints != null && !constraints.isEmpty()) ? constraints.get(0) : null;
+            List<String> fields = response.getFields() != null ? new ArrayList<>(response.getFields()) : List.of();
+            return new PlanKey(api, ontologyGeneration, response.getTarget(), response.getSubEntity(),
+                    constraint, fields, response.getLimit());
+        }
+    }
+}
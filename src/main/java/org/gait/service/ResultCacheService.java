@@ -0,0 +1,195 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.gait.dto.Api;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Tiered prompt result cache: the in-heap {@link LocalResultCache} (L1), then the
+ * {@link DiskResultCache} segment files on local disk, in front of the shared
+ * {@link BlazegraphCacheService} (L2). Hits in a lower tier are promoted into the tiers above.
+ * Lookups are counted per tier (hit or miss) and timed, with writes, in {@link PipelineMetrics}.
+ * Hits in the tiers above Blazegraph are reported to it as accesses, so its LRU eviction sees them.
+ * Prompt entries are keyed by {@link CacheKeys#cacheKey} and point at results
+ * keyed by {@link CacheKeys#queryKey}, so different wordings share one upstream result.
+ */
+@Service
+@RequiredArgsConstructor
+public class ResultCacheService {
+
+    private final LocalResultCache localCache;
+    private final DiskResultCache diskCache;
+    private final BlazegraphCacheService blazegraphCache;
+    private final PipelineMetrics pipelineMetrics;
+
+    /**
+     * Returns whether the entry is past its TTL and only served within the stale grace window.
+     */
+    public boolean isStale(BlazegraphCacheService.CachedEntry entry) {
+        return blazegraphCache.isStale(Instant.parse(entry.createdAt));
+    }
+
+    /**
+     * Returns the instant the entry goes stale (createdAt + TTL).
+     */
+    public Instant staleAt(BlazegraphCacheService.CachedEntry entry) {
+        return Instant.parse(entry.createdAt).plus(blazegraphCache.getEntryTtl());
+    }
+
+    /**
+     * Returns the valid cached entry for the prompt key, or null.
+     * The entry may be stale (see {@link #isStale}).
+     */
+    public BlazegraphCacheService.CachedEntry fetch(String key) {
+        return fetchTiered(key, blazegraphCache::fetchCacheEntry, blazegraphCache::touch, true);
+    }
+
+    /**
+     * Like {@link #fetch}, for a key that just missed {@link #fetchLocal}: only the tiers below
+     * the L1 (disk, then Blazegraph) are looked up. Blocks, so callers on a non-blocking path
+     * run it on an executor.
+     */
+    public BlazegraphCacheService.CachedEntry fetchBelowLocal(String key) {
+        return fetchTiered(key, blazegraphCache::fetchCacheEntry, blazegraphCache::touch, false);
+    }
+
+    /**
+     * Bulk variant of {@link #fetch}: keys missing from the L1 are resolved
+     * with a single Blazegraph lookup. Returns the valid entries by key.
+     */
+    public Map<String, BlazegraphCacheService.CachedEntry> fetchAll(Collection<String> keys) {
+        return pipelineMetrics.timer(PipelineMetrics.Stage.CACHE_LOOKUP).record(() -> lookupAll(keys));
+    }
+
+    private Map<String, BlazegraphCacheService.CachedEntry> lookupAll(Collection<String> keys) {
+        Map<String, BlazegraphCacheService.CachedEntry> entries = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            BlazegraphCacheService.CachedEntry entry = localCache.get(key);
+            pipelineMetrics.cacheLookup(PipelineMetrics.Tier.L1, entry);
+            if (entry == null) {
+                entry = diskCache.get(key);
+                pipelineMetrics.cacheLookup(PipelineMetrics.Tier.DISK, entry);
+                if (entry != null) {
+                    localCache.put(key, entry);
+                }
+            }
+            if (entry != null) {
+                blazegraphCache.touch(key);
+                entries.put(key, entry);
+            } else {
+                misses.add(key);
+            }
+        }
+        Map<String, BlazegraphCacheService.CachedEntry> remote = blazegraphCache.fetchCacheEntries(misses);
+        for (String key : misses) {
+            pipelineMetrics.cacheLookup(PipelineMetrics.Tier.L2, remote.get(key));
+        }
+        remote.forEach((key, entry) -> {
+            localCache.put(key, entry);
+            diskCache.put(key, entry);
+        });
+        entries.putAll(remote);
+        return entries;
+    }
+
+    /**
+     * Returns the valid L1 entry for the prompt key, or null, without going to Blazegraph.
+     */
+    public BlazegraphCacheService.CachedEntry fetchLocal(String key) {
+        BlazegraphCacheService.CachedEntry entry = localCache.get(key);
+        pipelineMetrics.cacheLookup(PipelineMetrics.Tier.L1, entry);
+        if (entry != null) {
+            blazegraphCache.touch(key);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the valid cached result of the GraphQL query, or null.
+     */
+    public BlazegraphCacheService.CachedEntry fetchResult(Api api, String graphQLQuery) {
+        return fetchTiered(CacheKeys.queryKey(api, graphQLQuery),
+                blazegraphCache::fetchResult, blazegraphCache::touchResult, true);
+    }
+
+    /**
+     * Stores a fresh upstream result for the query and points the prompt key at it,
+     * in both tiers with the same creation timestamp.
+     * The original prompt is kept as a literal next to the hashed key.
+     */
+    public void save(String key, String prompt, Api api, String graphQLQuery, String graphQLResult) {
+        Timer.Sample sample = Timer.start();
+        String queryKey = CacheKeys.queryKey(api, graphQLQuery);
+        String createdAt = Instant.now().toString();
+        BlazegraphCacheService.CachedEntry entry =
+                new BlazegraphCacheService.CachedEntry(prompt, graphQLResult, createdAt);
+        BlazegraphCacheService.CachedEntry result =
+                new BlazegraphCacheService.CachedEntry(null, graphQLResult, createdAt);
+        localCache.put(queryKey, result);
+        localCache.put(key, entry);
+        diskCache.put(queryKey, result);
+        diskCache.put(key, entry);
+        blazegraphCache.saveCacheEntry(key, queryKey, api, entry);
+        sample.stop(pipelineMetrics.timer(PipelineMetrics.Stage.CACHE_WRITE));
+    }
+
+    /**
+     * Points the prompt key at an already cached result; the entry expires with that result.
+     */
+    public void link(String key, String prompt, Api api, String graphQLQuery,
+                     BlazegraphCacheService.CachedEntry result) {
+        Timer.Sample sample = Timer.start();
+        BlazegraphCacheService.CachedEntry entry =
+                new BlazegraphCacheService.CachedEntry(prompt, result.graphQLResult, result.createdAt);
+        localCache.put(key, entry);
+        diskCache.put(key, entry);
+        blazegraphCache.linkCacheEntry(key, CacheKeys.queryKey(api, graphQLQuery), entry);
+        sample.stop(pipelineMetrics.timer(PipelineMetrics.Stage.CACHE_WRITE));
+    }
+
+    private BlazegraphCacheService.CachedEntry fetchTiered(
+            String key, Function<String, BlazegraphCacheService.CachedEntry> remoteLookup,
+            Consumer<String> touch, boolean includeLocal) {
+        return pipelineMetrics.timer(PipelineMetrics.Stage.CACHE_LOOKUP)
+                .record(() -> lookupTiers(key, remoteLookup, touch, includeLocal));
+    }
+
+    private BlazegraphCacheService.CachedEntry lookupTiers(
+            String key, Function<String, BlazegraphCacheService.CachedEntry> remoteLookup,
+            Consumer<String> touch, boolean includeLocal) {
+        BlazegraphCacheService.CachedEntry entry;
+        if (includeLocal) {
+            entry = localCache.get(key);
+            pipelineMetrics.cacheLookup(PipelineMetrics.Tier.L1, entry);
+            if (entry != null) {
+                touch.accept(key);
+                return entry;
+            }
+        }
+        entry = diskCache.get(key);
+        pipelineMetrics.cacheLookup(PipelineMetrics.Tier.DISK, entry);
+        if (entry != null) {
+            localCache.put(key, entry);
+            touch.accept(key);
+            return entry;
+        }
+        entry = remoteLookup.apply(key);
+        pipelineMetrics.cacheLookup(PipelineMetrics.Tier.L2, entry);
+        if (entry != null) {
+            localCache.put(key, entry);
+            diskCache.put(key, entry);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,81 @@
+package org.gait.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key: the first caller runs the computation,
+ * every other caller arriving while it is in flight waits for (and shares) its outcome.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the computation for the key, or joins the one already in flight.
+     * A joining caller waits at most timeoutMs and gets the leader's exception if it fails.
+     */
+    public V execute(K key, Supplier<V> computation, long timeoutMs) throws TimeoutException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+            try {
+                V value = computation.get();
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+        try {
+            return existing.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight computation", e);
+        }
+    }
+
+    /**
+     * Non-blocking variant: starts the computation for the key, or joins the one already in flight.
+     * A joining caller's future fails with a {@link TimeoutException} after timeoutMs.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> computation, long timeoutMs) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // A copy, so the timeout only applies to this caller
+            return existing.copy().orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        CompletableFuture<V> computed;
+        try {
+            computed = computation.get();
+        } catch (RuntimeException | Error e) {
+            computed = CompletableFuture.failedFuture(e);
+        }
+        computed.whenComplete((value, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.copy();
+    }
+}
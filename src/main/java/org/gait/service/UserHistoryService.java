@@ -1,98 +1,55 @@
 package org.gait.service;
 
-import org.apache.jena.query.*;
-import org.apache.jena.sparql.exec.http.QueryExecutionHTTP;
-import org.apache.jena.sparql.exec.http.QuerySendMode;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateFactory;
-import org.apache.jena.update.UpdateProcessor;
-import org.apache.jena.update.UpdateRequest;
-import org.gait.vocabulary.UserHistoryOntology;
-import org.springframework.beans.factory.annotation.Value;
+import lombok.RequiredArgsConstructor;
+import org.gait.dto.Api;
+import org.gait.dto.CursorPage;
 import org.springframework.stereotype.Service;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * User prompt history, stored by the {@link HistoryStore} selected with history.store.
+ */
 @Service
+@RequiredArgsConstructor
 public class UserHistoryService {
 
-    @Value("${blazegraph.endpoint:http://localhost:9999/blazegraph/namespace/kb/sparql}")
-    private String blazegraphEndpoint;
-
-    // Prefixes for our user history ontology and XSD.
-    private static final String PREFIXES = "PREFIX uh: <" + UserHistoryOntology.NS + "> " +
-            "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
+    private final HistoryStore historyStore;
+    private final PipelineMetrics pipelineMetrics;
 
     /**
-     * Generates a unique URI for a history record using the user ID and prompt.
+     * Saves a user history record with userId, API, prompt, and creation timestamp.
+     * The write is queued behind the request and batched with other history writes.
      */
-    public String generateHistoryURI(String userId, String prompt) {
-        String base = userId + "_" + prompt;
-        return "urn:userhistory:" + URLEncoder.encode(base, StandardCharsets.UTF_8);
+    public void saveUserHistory(String userId, Api api, String prompt) {
+        saveUserHistory(userId, api, List.of(prompt));
     }
 
     /**
-     * Sanitizes input by escaping double quotes and removing newlines.
+     * Saves several history records of the same user and API at once.
      */
-    private String sanitize(String input) {
-        if (input == null) return "";
-        return input.replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
+    public void saveUserHistory(String userId, Api api, List<String> prompts) {
+        if (!prompts.isEmpty()) {
+            pipelineMetrics.timer(PipelineMetrics.Stage.HISTORY_WRITE)
+                    .record(() -> historyStore.save(userId, api, prompts));
+        }
     }
 
     /**
-     * Saves a user history record in Blazegraph with userId, prompt, and creation timestamp.
+     * Retrieves one page of a user's history, most recent first, optionally within [from, to).
+     * The cursor is the one returned with the previous page (null for the first page).
      */
-    public void saveUserHistory(String userId, String prompt) {
-        String historyURI = generateHistoryURI(userId, prompt);
-        String safeUserId = sanitize(userId);
-        String safePrompt = sanitize(prompt);
-        String timestamp = Instant.now().toString(); // ISO-8601 format
-
-        String updateString = PREFIXES +
-                "INSERT DATA { " +
-                "  <" + historyURI + "> a <" + UserHistoryOntology.UserHistory + "> ; " +
-                "    <" + UserHistoryOntology.userId + "> \"" + safeUserId + "\" ; " +
-                "    <" + UserHistoryOntology.prompt + "> \"" + safePrompt + "\" ; " +
-                "    <" + UserHistoryOntology.createdAt + "> \"" + timestamp + "\"^^xsd:dateTime ." +
-                "}";
-        UpdateRequest updateRequest = UpdateFactory.create(updateString);
-        UpdateProcessor processor = UpdateExecutionFactory.createRemoteForm(updateRequest, blazegraphEndpoint);
-        processor.execute();
+    public CursorPage<UserHistoryEntry> getHistoryForUser(String userId, Instant from, Instant to,
+                                                          String cursor, int limit) {
+        return historyStore.find(userId, from, to, cursor, limit);
     }
 
     /**
-     * Retrieves all history records for a given user ID.
+     * The prompts sent to the API most often since the given instant, across all users.
      */
-    public List<UserHistoryEntry> getHistoryForUser(String userId) {
-        String safeUserId = sanitize(userId);
-        String queryString = PREFIXES +
-                "SELECT ?s ?prompt ?createdAt WHERE { " +
-                "  ?s a <" + UserHistoryOntology.UserHistory + "> ; " +
-                "     <" + UserHistoryOntology.userId + "> ?uid ; " +
-                "     <" + UserHistoryOntology.prompt + "> ?prompt ; " +
-                "     <" + UserHistoryOntology.createdAt + "> ?createdAt . " +
-                "  FILTER(str(?uid) = \"" + safeUserId + "\")" +
-                "}";
-        Query query = QueryFactory.create(queryString);
-        List<UserHistoryEntry> entries = new ArrayList<>();
-        try (QueryExecution qexec = QueryExecutionHTTP.newBuilder()
-                .endpoint(blazegraphEndpoint)
-                .query(query)
-                .sendMode(QuerySendMode.asPost)
-                .build()) {
-            ResultSet results = qexec.execSelect();
-            while (results.hasNext()) {
-                QuerySolution sol = results.nextSolution();
-                String prompt = sol.getLiteral("prompt").getString();
-                String createdAt = sol.getLiteral("createdAt").getString();
-                entries.add(new UserHistoryEntry(userId, prompt, createdAt));
-            }
-        }
-        return entries;
+    public List<PopularPrompt> getPopularPrompts(Api api, Instant since, int limit) {
+        return historyStore.findPopular(api, since, limit);
     }
 
     /**
@@ -109,4 +66,17 @@ public class UserHistoryService {
             this.createdAt = createdAt;
         }
     }
+
+    /**
+     * DTO representing a prompt and how many times it was sent.
+     */
+    public static class PopularPrompt {
+        public final String prompt;
+        public final long uses;
+
+        public PopularPrompt(String prompt, long uses) {
+            this.prompt = prompt;
+            this.uses = uses;
+        }
+    }
 }
@@ -0,0 +1,180 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded write-behind queue drained by a single background thread.
+ * Items are handed to the flusher in batches, when a batch is full or when the
+ * oldest queued item has waited flushIntervalMs, whichever comes first.
+ * <p>
+ * When the queue is full a producer waits up to offerTimeoutMs, then its item is dropped and counted
+ * (gait.write_behind.dropped, reason queue-full): a slow backend costs producers at most that wait,
+ * never a write of their own, and the heap stays bounded.
+ * Closing the queue drains everything that is still queued; items submitted afterwards are dropped the same way.
+ * <p>
+ * The flusher returns the items it could not write because of a transient failure (or throws if it wrote nothing);
+ * the worker retries them up to maxAttempts times, waiting retryBackoffMs longer after each failed attempt,
+ * before counting them as failed.
+ */
+@Slf4j
+public class WriteBehindQueue<T> implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final UnaryOperator<List<T>> flusher;
+    private final Timer flushTimer;
+    private final Counter failedItems;
+    private final Counter droppedItems;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public WriteBehindQueue(String name, int capacity, int batchSize, long flushIntervalMs, long offerTimeoutMs,
+                            int maxAttempts, long retryBackoffMs, UnaryOperator<List<T>> flusher,
+                            MeterRegistry meterRegistry) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.flusher = flusher;
+        Gauge.builder("gait.write_behind.queue.depth", queue, BlockingQueue::size)
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("gait.write_behind.flush")
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.failedItems = Counter.builder("gait.write_behind.failed")
+                .tag("queue", name)
+                .register(meterRegistry);
+        this.droppedItems = Counter.builder("gait.write_behind.dropped")
+                .tag("queue", name)
+                .tag("reason", "queue-full")
+                .register(meterRegistry);
+        this.worker = new Thread(this::run, "write-behind-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues an item; if the queue stays full for offerTimeoutMs (or is closed), drops it.
+     */
+    public void submit(T item) {
+        try {
+            if (running && queue.offer(item, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedItems.increment();
+        log.warn("Write-behind queue '{}' is {}, dropped an item", name, running ? "full" : "closed");
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            List<T> batch = new ArrayList<>(batchSize);
+            try {
+                T first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            queue.drainTo(batch, batchSize - batch.size());
+            flush(batch, maxAttempts);
+        }
+    }
+
+    private void flush(List<T> batch, int attempts) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<T> pending = batch;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    pending = flusher.apply(pending);
+                } catch (Exception e) {
+                    log.warn("Write-behind queue '{}' failed to flush {} item(s): {}", name, pending.size(),
+                            e.getMessage());
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                if (attempt >= attempts || !backOff(attempt)) {
+                    failedItems.increment(pending.size());
+                    log.error("Write-behind queue '{}' gave up on {} item(s) after {} attempt(s)", name,
+                            pending.size(), attempt);
+                    return;
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting queued writes and waits for the remaining items to be flushed.
+     */
+    @Override
+    public void close() {
+        // No interrupt: an in-flight flush is allowed to finish, the worker exits after its next poll.
+        running = false;
+        try {
+            worker.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Items offered while the worker was exiting.
+        List<T> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        flush(rest, maxAttempts);
+    }
+}
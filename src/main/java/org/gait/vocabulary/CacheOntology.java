@@ -3,9 +3,15 @@ package org.gait.vocabulary;
 public final class CacheOntology {
     public static final String NS = "http://example.org/cache#";
     public static final String CachedEntry = NS + "CachedEntry";
+    public static final String CachedResult = NS + "CachedResult";
     public static final String originalPrompt = NS + "originalPrompt";
+    public static final String hasResult = NS + "hasResult";
+    public static final String api = NS + "api";
     public static final String hasGraphQLResult = NS + "hasGraphQLResult";
+    public static final String payloadSize = NS + "payloadSize";
+    public static final String codec = NS + "codec";
     public static final String createdAt = NS + "createdAt";
+    public static final String lastAccessedAt = NS + "lastAccessedAt";
 
     private CacheOntology() {
         // Prevent instantiation.
@@ -0,0 +1,15 @@
+package org.gait.vocabulary;
+
+public final class GraphQLOntology {
+    public static final String NS = "http://example.org/ontology#";
+    public static final String mapsToGraphQLType = NS + "mapsToGraphQLType";
+    public static final String mapsToField = NS + "mapsToField";
+    public static final String identifierArgument = NS + "identifierArgument";
+    public static final String mapsToArgumentField = NS + "mapsToArgumentField";
+    public static final String mapsToOrderingField = NS + "mapsToOrderingField";
+    public static final String defaultDirection = NS + "defaultDirection";
+
+    private GraphQLOntology() {
+        // Prevent instantiation.
+    }
+}
@@ -0,0 +1,139 @@
+package org.gait.controller;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.DispatcherType;
+import org.gait.database.service.EndpointCallService;
+import org.gait.dto.RoleName;
+import org.gait.security.JwtAuthenticationFilter;
+import org.gait.security.JwtUtils;
+import org.gait.security.SecurityConfig;
+import org.gait.security.UserDetailsImpl;
+import org.gait.security.UserDetailsServiceImpl;
+import org.gait.service.ClientService;
+import org.gait.service.UserHistoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ClientController.class)
+@Import({SecurityConfig.class, JwtAuthenticationFilter.class})
+@TestPropertySource(properties = "client.async.enabled=true")
+class ClientControllerTest {
+
+    private static final String BODY = "{\"prompt\": \"octocat's repositories\", \"api\": \"GITHUB\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private JwtUtils jwtUtils;
+    @MockitoBean
+    private UserDetailsServiceImpl userDetailsService;
+    @MockitoBean
+    private ClientService clientService;
+    @MockitoBean
+    private EndpointCallService endpointCallService;
+    @MockitoBean
+    private UserHistoryService userHistoryService;
+    @MockitoBean
+    private ThreadPoolTaskExecutor clientExecutor;
+
+    @BeforeEach
+    void setUp() {
+        Claims claims = mock(Claims.class);
+        when(jwtUtils.verify("valid")).thenReturn(claims);
+        when(jwtUtils.getPrincipal(claims)).thenReturn(UserDetailsImpl.fromClaims(7L, "client@example.org", RoleName.CLIENT));
+        when(jwtUtils.verify("forged")).thenThrow(new JwtException("bad signature"));
+    }
+
+    @Test
+    void authenticatedRequestIsAuthorizedAgainOnTheAsyncDispatch() throws Exception {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        when(clientService.handleClientPromptAsync(any())).thenReturn(result);
+
+        MvcResult started = mockMvc.perform(useApi().header("Authorization", "Bearer valid"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.complete("{\"data\":{}}");
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"data\":{}}"));
+    }
+
+    @Test
+    void requestsWithoutAValidTokenNeverStartAsyncProcessing() throws Exception {
+        mockMvc.perform(useApi())
+                .andExpect(status().isUnauthorized())
+                .andExpect(request().asyncNotStarted());
+        mockMvc.perform(useApi().header("Authorization", "Bearer forged"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(request().asyncNotStarted());
+        verifyNoInteractions(clientService);
+    }
+
+    @Test
+    void asyncDispatchWithoutAnAuthenticatedRequestIsRejected() throws Exception {
+        mockMvc.perform(useApi().with(dispatch -> {
+                    dispatch.setDispatcherType(DispatcherType.ASYNC);
+                    return dispatch;
+                }))
+                .andExpect(status().isUnauthorized());
+        verifyNoInteractions(clientService);
+    }
+
+    @Test
+    void batchUpToTheMaximumSizeIsAccepted() throws Exception {
+        when(clientService.handleClientPromptBatch(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.nCopies(100, "{\"data\":{}}")));
+
+        mockMvc.perform(useApiBatch(100).header("Authorization", "Bearer valid"))
+                .andExpect(request().asyncStarted());
+        verify(clientService).handleClientPromptBatch(anyList());
+    }
+
+    @Test
+    void batchOverTheMaximumSizeIsRefused() throws Exception {
+        mockMvc.perform(useApiBatch(101).header("Authorization", "Bearer valid"))
+                .andExpect(status().isBadRequest())
+                .andExpect(request().asyncNotStarted());
+        verifyNoInteractions(clientService);
+    }
+
+    private static MockHttpServletRequestBuilder useApi() {
+        return post("/client/use-api")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(BODY);
+    }
+
+    private static MockHttpServletRequestBuilder useApiBatch(int size) {
+        return post("/client/use-api/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[" + String.join(",", Collections.nCopies(size, BODY)) + "]");
+    }
+}
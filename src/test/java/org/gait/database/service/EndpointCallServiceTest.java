@@ -0,0 +1,170 @@
+package org.gait.database.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.gait.database.repository.EndpointCallRepository;
+import org.gait.dto.Api;
+import org.gait.dto.CallStatsSort;
+import org.gait.dto.CursorPage;
+import org.gait.dto.EndpointCall;
+import org.gait.service.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class EndpointCallServiceTest {
+
+    private final EndpointCallRepository repository = mock(EndpointCallRepository.class);
+    private final EndpointCallService service = new EndpointCallService(repository, null, null, null);
+
+    // Call counts go through a real batch writer to a JdbcTemplate stand-in that sums the upserts it accepts.
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final EndpointCallService counting = new EndpointCallService(repository,
+            new JdbcBatchWriter(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class))),
+            null, new PipelineMetrics(new SimpleMeterRegistry()));
+    private final Map<String, Long> callCounts = new HashMap<>();
+
+    @Test
+    void callCountCursorResumesAfterTheLastRow() {
+        when(repository.findCallStatsByCallCount(isNull(), anyLong(), anyLong(), any(Limit.class)))
+                .thenReturn(List.of(call(9L, 12L), call(4L, 12L)));
+
+        CursorPage<EndpointCall> first = service.getCallStats(null, CallStatsSort.CALL_COUNT, null, 2);
+        assertEquals("12:4", first.getNextCursor());
+        verify(repository).findCallStatsByCallCount(isNull(), eq(Long.MAX_VALUE), eq(Long.MAX_VALUE),
+                any(Limit.class));
+
+        service.getCallStats(null, CallStatsSort.CALL_COUNT, first.getNextCursor(), 2);
+        verify(repository).findCallStatsByCallCount(isNull(), eq(12L), eq(4L), any(Limit.class));
+    }
+
+    @Test
+    void idCursorResumesAfterTheLastRowAndEndsOnAShortPage() {
+        when(repository.findCallStatsById(isNull(), anyLong(), any(Limit.class)))
+                .thenReturn(List.of(call(3L, 1L), call(7L, 1L)))
+                .thenReturn(List.of(call(8L, 1L)));
+
+        CursorPage<EndpointCall> first = service.getCallStats(null, CallStatsSort.ID, null, 2);
+        assertEquals("7", first.getNextCursor());
+        verify(repository).findCallStatsById(isNull(), eq(0L), any(Limit.class));
+
+        CursorPage<EndpointCall> last = service.getCallStats(null, CallStatsSort.ID, first.getNextCursor(), 2);
+        assertNull(last.getNextCursor());
+        verify(repository).findCallStatsById(isNull(), eq(7L), any(Limit.class));
+    }
+
+    @Test
+    void malformedCursorsAreABadRequest() {
+        for (String cursor : new String[]{"abc", "12:x", ":4", ""}) {
+            ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                    () -> service.getCallStats(null, CallStatsSort.CALL_COUNT, cursor, 10));
+            assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        }
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> service.getCallStats(null, CallStatsSort.ID, "12:4", 10));
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void refusedBatchIsRetriedRowByRowWithoutCountingTwice() {
+        refuseBatch();
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class))).thenAnswer(invocation -> {
+            Map.Entry<String, Long> upsert = bind(invocation.getArgument(1));
+            if (upsert.getKey().equals("2/COUNTRIES")) {
+                throw new DataIntegrityViolationException("user 2 was deleted");
+            }
+            return store(upsert);
+        });
+        countCalls();
+
+        counting.flushCallCounts();
+        counting.flushCallCounts();
+
+        // The refused row is dropped, not retried on the next flush.
+        assertEquals(Map.of("1/GITHUB", 3L), callCounts);
+        verify(jdbcTemplate, times(2)).update(anyString(), any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void countsLeftUnwrittenByAnOutageAreWrittenOnceOnTheNextFlush() {
+        refuseBatch();
+        // The database goes away after the first row of the retry, and is back for the next flush.
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenAnswer(invocation -> store(bind(invocation.getArgument(1))))
+                .thenThrow(new QueryTimeoutException("statement timeout"))
+                .thenAnswer(invocation -> store(bind(invocation.getArgument(1))));
+        countCalls();
+
+        counting.flushCallCounts();
+        counting.incrementCallCount(2L, Api.COUNTRIES);
+        counting.flushCallCounts();
+
+        assertEquals(Map.of("1/GITHUB", 3L, "2/COUNTRIES", 2L), callCounts);
+    }
+
+    private void countCalls() {
+        for (int i = 0; i < 3; i++) {
+            counting.incrementCallCount(1L, Api.GITHUB);
+        }
+        counting.incrementCallCount(2L, Api.COUNTRIES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refuseBatch() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("batch refused"));
+    }
+
+    /**
+     * Binds one upsert and returns its "user/endpoint" row with the calls it adds.
+     */
+    private static Map.Entry<String, Long> bind(PreparedStatementSetter setter) throws SQLException {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.setValues(ps);
+        ArgumentCaptor<Long> longs = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<String> endpoint = ArgumentCaptor.forClass(String.class);
+        verify(ps, times(2)).setLong(anyInt(), longs.capture());
+        verify(ps).setString(eq(2), endpoint.capture());
+        return Map.entry(longs.getAllValues().get(0) + "/" + endpoint.getValue(), longs.getAllValues().get(1));
+    }
+
+    private int store(Map.Entry<String, Long> upsert) {
+        callCounts.merge(upsert.getKey(), upsert.getValue(), Long::sum);
+        return 1;
+    }
+
+    private static EndpointCall call(Long id, Long callCount) {
+        return new EndpointCall(id, "user@example.com", "GITHUB", callCount);
+    }
+}
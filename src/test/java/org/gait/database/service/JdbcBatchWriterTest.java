@@ -0,0 +1,104 @@
+package org.gait.database.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcBatchWriterTest {
+
+    private static final String SQL = "INSERT INTO t (v) VALUES (?)";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final JdbcBatchWriter writer = new JdbcBatchWriter(jdbcTemplate, new TransactionTemplate(transactionManager));
+
+    // The row the setter last bound, how the database answers each row on its own, and what it accepted.
+    private String bound;
+    private final Map<String, RuntimeException> refusals = new HashMap<>();
+    private final List<String> written = new ArrayList<>();
+    private final ParameterizedPreparedStatementSetter<String> setter = (ps, row) -> bound = row;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.update(eq(SQL), any(PreparedStatementSetter.class))).thenAnswer(invocation -> {
+            ((PreparedStatementSetter) invocation.getArgument(1)).setValues(null);
+            RuntimeException refusal = refusals.get(bound);
+            if (refusal != null) {
+                throw refusal;
+            }
+            written.add(bound);
+            return 1;
+        });
+    }
+
+    @Test
+    void rowRefusedOnItsOwnIsDroppedAndTheOthersWritten() {
+        refuseBatch(new DataIntegrityViolationException("value too long"));
+        refusals.put("bad", new DataIntegrityViolationException("value too long"));
+
+        List<String> unwritten = writer.write(SQL, List.of("a", "bad", "c"), setter);
+
+        assertTrue(unwritten.isEmpty());
+        assertEquals(List.of("a", "c"), written);
+    }
+
+    @Test
+    void batchIsHandedBackWhenTheDatabaseIsUnreachable() {
+        refuseBatch(new DataAccessResourceFailureException("connection refused"));
+
+        List<String> unwritten = writer.write(SQL, List.of("a", "b"), setter);
+
+        assertEquals(List.of("a", "b"), unwritten);
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void batchIsHandedBackWhenItsTransactionCannotStart() {
+        when(transactionManager.getTransaction(any())).thenThrow(new CannotCreateTransactionException("pool exhausted"));
+
+        List<String> unwritten = writer.write(SQL, List.of("a", "b"), setter);
+
+        assertEquals(List.of("a", "b"), unwritten);
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void rowsNotYetRetriedAreHandedBackWhenTheDatabaseFailsMidway() {
+        refuseBatch(new DataIntegrityViolationException("value too long"));
+        refusals.put("bad", new DataIntegrityViolationException("value too long"));
+        refusals.put("c", new QueryTimeoutException("statement timeout"));
+
+        List<String> unwritten = writer.write(SQL, List.of("a", "bad", "c", "d"), setter);
+
+        assertEquals(List.of("c", "d"), unwritten);
+        assertEquals(List.of("a"), written);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refuseBatch(RuntimeException refusal) {
+        when(jdbcTemplate.batchUpdate(eq(SQL), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(refusal);
+    }
+}
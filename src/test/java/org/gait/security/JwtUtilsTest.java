@@ -0,0 +1,56 @@
+package org.gait.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.gait.dto.RoleName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtUtilsTest {
+
+    private static final UserDetailsImpl CLIENT = UserDetailsImpl.fromClaims(7L, "client@example.org", RoleName.CLIENT);
+
+    @Test
+    void cachedTokenIsRejectedOnceExpired() throws InterruptedException {
+        // The exp claim has a one-second resolution.
+        JwtUtils jwtUtils = jwtUtils(1000L);
+        String token = jwtUtils.generateToken(CLIENT);
+        assertEquals("client@example.org", jwtUtils.verify(token).getSubject());
+
+        Thread.sleep(1500);
+        assertThrows(ExpiredJwtException.class, () -> jwtUtils.verify(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejectedWhileTheOriginalIsCached() {
+        JwtUtils jwtUtils = jwtUtils(60_000L);
+        String token = jwtUtils.generateToken(CLIENT);
+        assertEquals("client@example.org", jwtUtils.verify(token).getSubject());
+
+        // Same header and signature, with the role claim raised to ADMIN.
+        String[] parts = token.split("\\.");
+        String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                .replace("\"CLIENT\"", "\"ADMIN\"");
+        String tampered = parts[0] + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                + "." + parts[2];
+
+        assertThrows(JwtException.class, () -> jwtUtils.verify(tampered));
+        assertEquals("client@example.org", jwtUtils.verify(token).getSubject());
+    }
+
+    private static JwtUtils jwtUtils(long expirationMs) {
+        JwtUtils jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", "test-secret-of-at-least-thirty-two-bytes");
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", expirationMs);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheMaxEntries", 100L);
+        jwtUtils.init();
+        return jwtUtils;
+    }
+}
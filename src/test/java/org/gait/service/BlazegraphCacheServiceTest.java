@@ -0,0 +1,100 @@
+package org.gait.service;
+
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.vocabulary.RDF;
+import org.gait.dto.Api;
+import org.gait.vocabulary.CacheOntology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlazegraphCacheServiceTest {
+
+    // Blazegraph stand-in: every query and update runs against an in-memory model.
+    private final Model store = ModelFactory.createDefaultModel();
+    private final BlazegraphClient blazegraphClient = mock(BlazegraphClient.class);
+    private final BlazegraphWriteBehind writeBehind = mock(BlazegraphWriteBehind.class);
+    private final BlazegraphCacheService cache =
+            new BlazegraphCacheService(writeBehind, new PayloadCodec(1024, 6), blazegraphClient);
+
+    @BeforeEach
+    void setUp() {
+        when(blazegraphClient.isAvailable()).thenReturn(true);
+        when(blazegraphClient.select(anyString(), any(Duration.class))).thenAnswer(invocation -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create((String) invocation.getArgument(0), store)) {
+                return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+        });
+        doAnswer(invocation -> {
+            UpdateAction.parseExecute((String) invocation.getArgument(0), store);
+            return null;
+        }).when(blazegraphClient).update(anyString(), any(Duration.class));
+        doAnswer(invocation -> {
+            UpdateAction.parseExecute((String) invocation.getArgument(0), store);
+            return null;
+        }).when(writeBehind).submit(anyString());
+
+        ReflectionTestUtils.setField(cache, "maintenanceBudgetMs", 1000L);
+        ReflectionTestUtils.setField(cache, "expirationMinutes", 10L);
+        ReflectionTestUtils.setField(cache, "staleGraceMinutes", 5L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 1L);
+        ReflectionTestUtils.setField(cache, "maxBytes", Long.MAX_VALUE);
+
+        // "hot" was stored first and has not been read from Blazegraph since; "cold" is newer.
+        save("hot", Instant.now().minusSeconds(120));
+        save("cold", Instant.now().minusSeconds(60));
+    }
+
+    @Test
+    void promptServedFromAnUpperTierSurvivesEviction() {
+        cache.touch("hot-prompt");
+        cache.maintain();
+
+        assertTrue(hasResult("hot"));
+        assertFalse(hasResult("cold"));
+    }
+
+    @Test
+    void resultServedFromAnUpperTierSurvivesEviction() {
+        cache.touchResult("hot");
+        cache.maintain();
+
+        assertTrue(hasResult("hot"));
+        assertFalse(hasResult("cold"));
+    }
+
+    @Test
+    void leastRecentlyAccessedResultIsEvictedWithoutUpperTierReads() {
+        cache.maintain();
+
+        assertFalse(hasResult("hot"));
+        assertTrue(hasResult("cold"));
+    }
+
+    private void save(String name, Instant createdAt) {
+        cache.saveCacheEntry(name + "-prompt", name, Api.GITHUB,
+                new BlazegraphCacheService.CachedEntry(name, "{\"data\":{}}", createdAt.toString()));
+    }
+
+    private boolean hasResult(String queryKey) {
+        Resource result = store.createResource(cache.generateResultURI(queryKey));
+        return store.contains(result, RDF.type, store.createResource(CacheOntology.CachedResult));
+    }
+}
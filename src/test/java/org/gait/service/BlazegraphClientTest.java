@@ -0,0 +1,100 @@
+package org.gait.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlazegraphClientTest {
+
+    private static final String UPDATE = "INSERT DATA { <urn:gait:s> <urn:gait:p> <urn:gait:o> }";
+    private static final Duration BUDGET = Duration.ofSeconds(2);
+
+    // Blazegraph stand-in answering every request with the current status.
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private BlazegraphClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/sparql", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        client = new BlazegraphClient("http://localhost:" + server.getAddress().getPort() + "/sparql",
+                1000, 3, 1000, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void circuitOpensAfterTheThresholdOfConsecutiveFailures() {
+        status.set(500);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(client.isAvailable());
+            assertStatus(HttpStatus.SERVICE_UNAVAILABLE, () -> client.update(UPDATE, BUDGET));
+        }
+        assertFalse(client.isAvailable());
+
+        // Rejected without reaching Blazegraph.
+        assertStatus(HttpStatus.SERVICE_UNAVAILABLE, () -> client.update(UPDATE, BUDGET));
+        assertEquals(3, requests.get());
+        assertEquals(1.0, meterRegistry.get("gait.blazegraph.rejected").counter().count());
+    }
+
+    @Test
+    void refusedRequestsDoNotCountAgainstTheCircuit() {
+        status.set(400);
+        for (int i = 0; i < 5; i++) {
+            assertStatus(HttpStatus.BAD_REQUEST, () -> client.update(UPDATE, BUDGET));
+        }
+        // Unparseable SPARQL is refused before it is sent.
+        assertStatus(HttpStatus.BAD_REQUEST, () -> client.update("INSERT DATA {", BUDGET));
+        assertStatus(HttpStatus.BAD_REQUEST, () -> client.select("SELECT WHERE", BUDGET));
+        assertTrue(client.isAvailable());
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    void refusedRequestResetsTheRunOfFailures() {
+        status.set(500);
+        for (int i = 0; i < 2; i++) {
+            assertStatus(HttpStatus.SERVICE_UNAVAILABLE, () -> client.update(UPDATE, BUDGET));
+        }
+        status.set(400);
+        assertStatus(HttpStatus.BAD_REQUEST, () -> client.update(UPDATE, BUDGET));
+        status.set(500);
+        for (int i = 0; i < 2; i++) {
+            assertStatus(HttpStatus.SERVICE_UNAVAILABLE, () -> client.update(UPDATE, BUDGET));
+        }
+        assertTrue(client.isAvailable());
+    }
+
+    private static void assertStatus(HttpStatus expected, Runnable call) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, call::run);
+        assertEquals(expected.value(), e.getStatusCode().value());
+    }
+}
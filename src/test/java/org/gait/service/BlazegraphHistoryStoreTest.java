@@ -0,0 +1,91 @@
+package org.gait.service;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Resource;
+import org.gait.dto.CursorPage;
+import org.gait.service.UserHistoryService.UserHistoryEntry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BlazegraphHistoryStoreTest {
+
+    private static final String CREATED_AT = "2024-05-01T10:15:30.123Z";
+    private static final String URI = "urn:userhistory:7:0d9c";
+
+    private final BlazegraphClient blazegraphClient = mock(BlazegraphClient.class);
+    private final BlazegraphHistoryStore store = new BlazegraphHistoryStore(null, blazegraphClient);
+
+    @Test
+    void cursorResumesStrictlyAfterTheLastRecord() {
+        ResultSetRewindable page = results(true);
+        ResultSetRewindable empty = results(false);
+        when(blazegraphClient.select(anyString(), any(Duration.class))).thenReturn(page, empty);
+
+        CursorPage<UserHistoryEntry> first = store.find("7", null, null, null, 1);
+        assertEquals(CREATED_AT, first.getItems().get(0).createdAt);
+        CursorPage<UserHistoryEntry> second = store.find("7", null, null, first.getNextCursor(), 1);
+        assertNull(second.getNextCursor());
+
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        verify(blazegraphClient, times(2)).select(query.capture(), any(Duration.class));
+        String resumed = query.getAllValues().get(1);
+        assertTrue(resumed.contains("?createdAt < \"" + CREATED_AT + "\"^^xsd:dateTime"), resumed);
+        assertTrue(resumed.contains("STR(?s) < \"" + URI + "\""), resumed);
+    }
+
+    @Test
+    void malformedCursorsAreABadRequest() {
+        for (String cursor : new String[]{"not base64!", encode("no separator"), encode("yesterday|" + URI),
+                encode("2024-05-01\"^^xsd:string) } #|" + URI)}) {
+            ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                    () -> store.find("7", null, null, cursor, 10));
+            assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        }
+        verifyNoInteractions(blazegraphClient);
+    }
+
+    private static String encode(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A result set with a single history record, or an empty one.
+     */
+    private static ResultSetRewindable results(boolean oneRecord) {
+        Literal prompt = mock(Literal.class);
+        when(prompt.getString()).thenReturn("a prompt");
+        Literal createdAt = mock(Literal.class);
+        when(createdAt.getLexicalForm()).thenReturn(CREATED_AT);
+        Resource subject = mock(Resource.class);
+        when(subject.getURI()).thenReturn(URI);
+        QuerySolution solution = mock(QuerySolution.class);
+        when(solution.getLiteral("prompt")).thenReturn(prompt);
+        when(solution.getLiteral("createdAt")).thenReturn(createdAt);
+        when(solution.getResource("s")).thenReturn(subject);
+
+        ResultSetRewindable results = mock(ResultSetRewindable.class);
+        when(results.hasNext()).thenReturn(oneRecord, false);
+        when(results.nextSolution()).thenReturn(solution);
+        return results;
+    }
+}
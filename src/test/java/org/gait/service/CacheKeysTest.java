@@ -0,0 +1,64 @@
+package org.gait.service;
+
+import org.gait.dto.Api;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheKeysTest {
+
+    @Test
+    void collapsesWhitespaceAndCase() {
+        assertEquals("show me octocat's repos", CacheKeys.normalize("  Show\tme \n OCTOCAT's   repos "));
+        assertEquals(CacheKeys.cacheKey(Api.GITHUB, "show me octocat's repos"),
+                CacheKeys.cacheKey(Api.GITHUB, "  Show\tme \n OCTOCAT's   repos "));
+    }
+
+    @Test
+    void appliesNfkc() {
+        // Full-width letters, a ligature and a non-breaking space.
+        assertEquals("file hello", CacheKeys.normalize("\uFB01le\u00A0\uFF28\uFF25\uFF2C\uFF2C\uFF2F"));
+        assertEquals(CacheKeys.cacheKey(Api.GITHUB, "file hello"),
+                CacheKeys.cacheKey(Api.GITHUB, "\uFB01le\u00A0\uFF28\uFF25\uFF2C\uFF2C\uFF2F"));
+    }
+
+    @Test
+    void keysAreFixedLengthHexAndScopedByApi() {
+        String key = CacheKeys.cacheKey(Api.GITHUB, "a prompt");
+        assertEquals(64, key.length());
+        assertTrue(key.matches("[0-9a-f]{64}"));
+        assertNotEquals(key, CacheKeys.cacheKey(Api.COUNTRIES, "a prompt"));
+        assertNotEquals(key, CacheKeys.cacheKey(Api.GITHUB, "another prompt"));
+        assertEquals("", CacheKeys.normalize(null));
+    }
+
+    @Test
+    void canonicalQueryCollapsesInsignificantWhitespace() {
+        String query = """
+                query {
+                  user(login: "a  b",  first: 5) {
+                    name, id
+                  }
+                }
+                """;
+        assertEquals("query { user(login: \"a  b\" first: 5) { name id } }", CacheKeys.canonicalQuery(query));
+    }
+
+    @Test
+    void canonicalQueryKeepsStringLiteralsIntact() {
+        assertEquals("{ user(login: \"a, \\\" b\") { name } }",
+                CacheKeys.canonicalQuery("{\n  user(login: \"a, \\\" b\")\n  { name }\n}"));
+    }
+
+    @Test
+    void queryKeyIgnoresFormattingOnly() {
+        String compact = "query { country(code: \"BR\") { name } }";
+        String spread = "query {\n  country(code: \"BR\") {\n    name\n  }\n}\n";
+        assertEquals(CacheKeys.queryKey(Api.COUNTRIES, compact), CacheKeys.queryKey(Api.COUNTRIES, spread));
+        assertNotEquals(CacheKeys.queryKey(Api.COUNTRIES, compact),
+                CacheKeys.queryKey(Api.COUNTRIES, "query { country(code: \"B R\") { name } }"));
+        assertNotEquals(CacheKeys.queryKey(Api.COUNTRIES, compact), CacheKeys.queryKey(Api.GITHUB, compact));
+    }
+}
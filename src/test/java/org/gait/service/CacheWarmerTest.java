@@ -0,0 +1,117 @@
+package org.gait.service;
+
+import org.gait.dto.Api;
+import org.gait.dto.ClientRequest;
+import org.gait.service.UserHistoryService.PopularPrompt;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CacheWarmerTest {
+
+    private static final long INTERVAL_MS = 300_000;
+
+    private final UserHistoryService userHistoryService = mock(UserHistoryService.class);
+    private final ResultCacheService resultCacheService = mock(ResultCacheService.class);
+    private final ClientService clientService = mock(ClientService.class);
+
+    @Test
+    void renewsMissingPromptsAndThoseGoingStaleBeforeTheNextRun() {
+        BlazegraphCacheService.CachedEntry stale = entry("stale");
+        BlazegraphCacheService.CachedEntry fresh = entry("fresh");
+        popular(Api.GITHUB, "missing", "stale", "fresh");
+        popular(Api.COUNTRIES);
+        when(resultCacheService.fetchAll(anyCollection())).thenReturn(Map.of(
+                CacheKeys.cacheKey(Api.GITHUB, "stale"), stale,
+                CacheKeys.cacheKey(Api.GITHUB, "fresh"), fresh));
+        // Within the interval, i.e. before the next run, or well after it.
+        when(resultCacheService.staleAt(stale)).thenReturn(Instant.now().plusMillis(INTERVAL_MS / 2));
+        when(resultCacheService.staleAt(fresh)).thenReturn(Instant.now().plusMillis(INTERVAL_MS * 2));
+        when(clientService.warmClientPrompt(any())).thenReturn(CompletableFuture.completedFuture("{}"));
+
+        warmer(2).warm();
+
+        assertEquals(List.of("missing", "stale"), warmedPrompts(2));
+    }
+
+    @Test
+    void skipsAnApiWhoseHistoryCannotBeRead() {
+        when(userHistoryService.getPopularPrompts(eq(Api.GITHUB), any(Instant.class), anyInt()))
+                .thenThrow(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "history store down"));
+        popular(Api.COUNTRIES, "brazil");
+        when(resultCacheService.fetchAll(anyCollection())).thenReturn(Map.of());
+        when(clientService.warmClientPrompt(any())).thenReturn(CompletableFuture.completedFuture("{}"));
+
+        warmer(2).warm();
+
+        ArgumentCaptor<ClientRequest> request = ArgumentCaptor.forClass(ClientRequest.class);
+        verify(clientService).warmClientPrompt(request.capture());
+        assertEquals(Api.COUNTRIES, request.getValue().getApi());
+        assertEquals("brazil", request.getValue().getPrompt());
+    }
+
+    @Test
+    void interruptedRunStillWaitsForThePromptsInFlight() throws InterruptedException {
+        popular(Api.GITHUB, "first", "second");
+        popular(Api.COUNTRIES, "third");
+        when(resultCacheService.fetchAll(anyCollection())).thenReturn(Map.of());
+        CompletableFuture<String> inFlight = new CompletableFuture<>();
+        // The run is interrupted while the first prompt is still being recomputed.
+        when(clientService.warmClientPrompt(any())).thenAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            return inFlight;
+        });
+
+        Thread run = new Thread(warmer(1)::warm);
+        run.start();
+        run.join(200);
+        assertTrue(run.isAlive());
+
+        inFlight.complete("{}");
+        run.join(5000);
+        assertFalse(run.isAlive());
+        // No prompt is started after the interrupt, in this API or the next.
+        verify(clientService, times(1)).warmClientPrompt(any());
+    }
+
+    private CacheWarmer warmer(int maxConcurrent) {
+        return new CacheWarmer(userHistoryService, resultCacheService, clientService,
+                true, 50, 24, INTERVAL_MS, maxConcurrent);
+    }
+
+    private void popular(Api api, String... prompts) {
+        List<PopularPrompt> popular = Arrays.stream(prompts)
+                .map(prompt -> new PopularPrompt(prompt, 1))
+                .toList();
+        when(userHistoryService.getPopularPrompts(eq(api), any(Instant.class), eq(50))).thenReturn(popular);
+    }
+
+    private List<String> warmedPrompts(int count) {
+        ArgumentCaptor<ClientRequest> requests = ArgumentCaptor.forClass(ClientRequest.class);
+        verify(clientService, times(count)).warmClientPrompt(requests.capture());
+        return requests.getAllValues().stream().map(ClientRequest::getPrompt).toList();
+    }
+
+    private static BlazegraphCacheService.CachedEntry entry(String prompt) {
+        return new BlazegraphCacheService.CachedEntry(prompt, "{\"data\":{}}", Instant.now().toString());
+    }
+}
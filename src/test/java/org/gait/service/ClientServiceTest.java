@@ -0,0 +1,181 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.gait.dto.Api;
+import org.gait.dto.ClientRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClientServiceTest {
+
+    private static final String PROMPT = "octocat's most starred repositories";
+    private static final String KEY = CacheKeys.cacheKey(Api.GITHUB, PROMPT);
+
+    private final GraphQLClient graphQLClient = mock(GraphQLClient.class);
+    private final GraphQLBatcher graphQLBatcher = mock(GraphQLBatcher.class);
+    private final OntologyMappingService ontologyMappingService = mock(OntologyMappingService.class);
+    private final ResultCacheService resultCacheService = mock(ResultCacheService.class);
+    // Runs every task on the calling thread, so only the upstream call is asynchronous.
+    private final ThreadPoolTaskExecutor clientExecutor = mock(ThreadPoolTaskExecutor.class);
+    private final ClientService clientService = new ClientService(graphQLClient, graphQLBatcher,
+            ontologyMappingService, resultCacheService, new QueryPlanCache(100), clientExecutor,
+            new PipelineMetrics(new SimpleMeterRegistry()));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(clientService, "coalesceTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(clientService, "streamMaxCachedBytes", 1024L);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(clientExecutor).execute(any(Runnable.class));
+        when(ontologyMappingService.forApi(any()))
+                .thenReturn(new OntologyMapping(1, Map.of(), Map.of(), Map.of()));
+    }
+
+    @Test
+    void staleHitIsServedAtOnceAndRefreshedOnce() {
+        BlazegraphCacheService.CachedEntry stale = entry("{\"data\":{\"stars\":1}}");
+        when(resultCacheService.fetch(KEY)).thenReturn(stale);
+        when(resultCacheService.fetchLocal(KEY)).thenReturn(stale);
+        when(resultCacheService.isStale(stale)).thenReturn(true);
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        when(graphQLBatcher.executeAsync(eq(Api.GITHUB), anyString())).thenReturn(upstream);
+
+        // Both front doors answer with the stale result while the refresh is still in flight.
+        assertEquals(stale.graphQLResult, clientService.handleClientPrompt(request()));
+        CompletableFuture<String> async = clientService.handleClientPromptAsync(request());
+        assertTrue(async.isDone());
+        assertEquals(stale.graphQLResult, async.join());
+
+        verify(graphQLBatcher, times(1)).executeAsync(eq(Api.GITHUB), anyString());
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+
+        upstream.complete("{\"data\":{\"stars\":2}}");
+        verify(resultCacheService).save(eq(KEY), eq(PROMPT), eq(Api.GITHUB), anyString(),
+                eq("{\"data\":{\"stars\":2}}"));
+    }
+
+    @Test
+    void batchLooksUpAndComputesEachDistinctPromptOnce() {
+        String cachedPrompt = "cached";
+        String missedPrompt = "missed";
+        String cachedKey = CacheKeys.cacheKey(Api.GITHUB, cachedPrompt);
+        String missedKey = CacheKeys.cacheKey(Api.GITHUB, missedPrompt);
+        BlazegraphCacheService.CachedEntry cached = entry("{\"data\":{\"cached\":true}}");
+        when(resultCacheService.fetchAll(anyCollection())).thenReturn(Map.of(cachedKey, cached));
+        when(graphQLBatcher.executeAsync(eq(Api.GITHUB), anyString()))
+                .thenReturn(CompletableFuture.completedFuture("{\"data\":{\"missed\":true}}"));
+
+        List<String> results = clientService.handleClientPromptBatch(List.of(
+                request(cachedPrompt), request(missedPrompt), request(cachedPrompt), request(missedPrompt))).join();
+
+        assertEquals(List.of(cached.graphQLResult, "{\"data\":{\"missed\":true}}",
+                cached.graphQLResult, "{\"data\":{\"missed\":true}}"), results);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> keys = ArgumentCaptor.forClass(Collection.class);
+        verify(resultCacheService).fetchAll(keys.capture());
+        assertEquals(List.of(cachedKey, missedKey), List.copyOf(keys.getValue()));
+        verify(graphQLBatcher, times(1)).executeAsync(eq(Api.GITHUB), anyString());
+    }
+
+    @Test
+    void streamedResultIsCachedWhenComplete() throws IOException {
+        String body = "{\"data\":{\"user\":{\"name\":\"The Octocat\"}}}";
+        stream(body);
+
+        verify(resultCacheService).save(eq(KEY), eq(PROMPT), eq(Api.GITHUB), anyString(), eq(body));
+    }
+
+    @Test
+    void streamedResultLargerThanTheTeeCapIsNotCached() throws IOException {
+        stream("{\"data\":{\"padding\":\"" + "x".repeat(2048) + "\"}}");
+
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void streamedErrorIsNotCached() throws IOException {
+        stream("{\"errors\":[{\"message\":\"API rate limit exceeded\"}]}");
+
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void streamedPartialResultIsNotCached() throws IOException {
+        stream("{\"data\":{\"user\":null},\"errors\":[{\"message\":\"Could not resolve to a User\"}]}");
+
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void truncatedStreamIsNotCached() throws IOException {
+        stream("{\"data\":{\"user\":{\"name\":");
+
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void partialResultIsHandedBackButNotCached() {
+        String body = "{\"data\":{\"user\":null},\"errors\":[{\"message\":\"Could not resolve to a User\"}]}";
+        when(graphQLBatcher.executeAsync(eq(Api.GITHUB), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(body));
+
+        assertEquals(body, clientService.handleClientPromptAsync(request()).join());
+        verify(resultCacheService, never()).save(any(), any(), any(), any(), any());
+    }
+
+    /**
+     * Streams an upstream answer for a prompt that misses the cache; the client gets it verbatim.
+     */
+    private void stream(String body) throws IOException {
+        when(graphQLClient.openStream(eq(Api.GITHUB), anyString()))
+                .thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        clientService.streamClientPrompt(request(), out);
+
+        assertEquals(body, out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static ClientRequest request() {
+        return request(PROMPT);
+    }
+
+    private static ClientRequest request(String prompt) {
+        ClientRequest request = new ClientRequest();
+        request.setApi(Api.GITHUB);
+        request.setPrompt(prompt);
+        return request;
+    }
+
+    private static BlazegraphCacheService.CachedEntry entry(String graphQLResult) {
+        return new BlazegraphCacheService.CachedEntry(PROMPT, graphQLResult, Instant.now().toString());
+    }
+}
@@ -0,0 +1,227 @@
+package org.gait.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskResultCacheTest {
+
+    private static final int MAGIC = 0x47414954;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopen() {
+        DiskResultCache cache = open(4096, 1 << 20);
+        cache.put("a", entry("prompt a", "result a"));
+        cache.put("b", entry(null, "result b"));
+        cache.close();
+
+        DiskResultCache reopened = open(4096, 1 << 20);
+        assertEquals("result a", reopened.get("a").graphQLResult);
+        assertEquals("prompt a", reopened.get("a").prompt);
+        assertEquals("result b", reopened.get("b").graphQLResult);
+        assertNull(reopened.get("b").prompt);
+        assertNull(reopened.get("c"));
+    }
+
+    @Test
+    void recoversFromTornTail() throws IOException {
+        DiskResultCache cache = open(4096, 1 << 20);
+        cache.put("a", entry("prompt a", "result a"));
+        cache.put("b", entry("prompt b", "result b"));
+        cache.close();
+
+        // A record cut short by a crash: full header, then only part of its body.
+        ByteBuffer torn = ByteBuffer.allocate(28 + 3)
+                .putInt(MAGIC).putInt(5).putInt(-1).putInt(100)
+                .putLong(System.currentTimeMillis()).putInt(0)
+                .put(new byte[]{1, 2, 3});
+        Path segment = segmentFiles().get(0);
+        long sizeBefore = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(torn.flip());
+        }
+
+        DiskResultCache reopened = open(4096, 1 << 20);
+        assertEquals("result a", reopened.get("a").graphQLResult);
+        assertEquals("result b", reopened.get("b").graphQLResult);
+        assertEquals(sizeBefore, Files.size(segment));
+
+        reopened.put("c", entry("prompt c", "result c"));
+        reopened.close();
+        DiskResultCache again = open(4096, 1 << 20);
+        assertEquals("result a", again.get("a").graphQLResult);
+        assertEquals("result c", again.get("c").graphQLResult);
+    }
+
+    @Test
+    void corruptRecordIsAMiss() throws IOException {
+        DiskResultCache cache = open(4096, 1 << 20);
+        cache.put("a", entry("prompt a", "result a"));
+        cache.put("b", entry("prompt b", "result b"));
+        cache.close();
+
+        // Flip the last byte of the first record's payload ("result a").
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = 28 + "a".length() + "prompt a".length() + "result a".length();
+        bytes[end - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        DiskResultCache reopened = open(4096, 1 << 20);
+        assertNull(reopened.get("a"));
+        assertEquals("result b", reopened.get("b").graphQLResult);
+    }
+
+    @Test
+    void rollsToNewSegmentsAndDropsTheOldest() throws IOException {
+        DiskResultCache cache = open(256, 3 * 256);
+        for (int i = 0; i < 20; i++) {
+            cache.put("key-" + i, entry("prompt " + i, "x".repeat(60)));
+        }
+
+        List<Path> files = segmentFiles();
+        assertTrue(files.size() > 1 && files.size() <= 3, "segments: " + files);
+        assertNull(cache.get("key-0"));
+        assertNotNull(cache.get("key-19"));
+    }
+
+    @Test
+    void compactionRewritesLiveRecordsAndDeletesDeadSegments() throws IOException {
+        DiskResultCache cache = open(512, 1 << 20);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key-" + i, entry(null, "old " + i + " " + "x".repeat(60)));
+        }
+        Path oldest = segmentFiles().get(0);
+        // Everything but key-0 is overwritten: the first segments are now mostly dead.
+        for (int i = 1; i < 10; i++) {
+            cache.put("key-" + i, entry(null, "new " + i));
+        }
+
+        cache.compact();
+
+        assertTrue(Files.notExists(oldest));
+        assertTrue(cache.get("key-0").graphQLResult.startsWith("old 0"));
+        for (int i = 1; i < 10; i++) {
+            assertEquals("new " + i, cache.get("key-" + i).graphQLResult);
+        }
+        cache.close();
+        DiskResultCache reopened = open(512, 1 << 20);
+        assertTrue(reopened.get("key-0").graphQLResult.startsWith("old 0"));
+        assertEquals("new 9", reopened.get("key-9").graphQLResult);
+    }
+
+    @Test
+    void keepsTheOldestSegmentWhenCompactingItWouldDropIt() throws IOException {
+        // 100-byte records, five per segment, at most three segments.
+        DiskResultCache cache = open(512, 3 * 512);
+        for (int i = 0; i < 5; i++) {
+            cache.put("key-" + i, entry(null, value("old")));
+        }
+        Path oldest = segmentFiles().get(0);
+        for (int i = 1; i < 5; i++) {
+            cache.put("key-" + i, entry(null, value("new")));
+        }
+        for (int i = 0; i < 6; i++) {
+            cache.put("fil-" + i, entry(null, value("filler")));
+        }
+        assertEquals(3, segmentFiles().size());
+
+        // Only key-0 is live in the oldest segment, and the active one is full.
+        cache.compact();
+
+        assertTrue(Files.exists(oldest));
+        assertTrue(cache.get("key-0").graphQLResult.startsWith("old"));
+        for (int i = 1; i < 5; i++) {
+            assertTrue(cache.get("key-" + i).graphQLResult.startsWith("new"));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertNotNull(cache.get("fil-" + i));
+        }
+    }
+
+    @Test
+    void compactionSkipsOnlyTheCorruptRecord() throws IOException {
+        DiskResultCache cache = open(512, 1 << 20);
+        for (int i = 0; i < 5; i++) {
+            cache.put("key-" + i, entry(null, value("old")));
+        }
+        cache.close();
+
+        // Flip the last payload byte of key-1, the second record.
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[2 * 100 - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        DiskResultCache reopened = open(512, 1 << 20);
+        for (int i = 0; i < 3; i++) {
+            reopened.put("key-" + i, entry(null, value("new")));
+        }
+        reopened.compact();
+
+        assertTrue(Files.notExists(segment));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(reopened.get("key-" + i).graphQLResult.startsWith("new"));
+        }
+        assertTrue(reopened.get("key-3").graphQLResult.startsWith("old"));
+        assertTrue(reopened.get("key-4").graphQLResult.startsWith("old"));
+    }
+
+    @Test
+    void ignoresUnknownFiles() throws IOException {
+        Files.writeString(directory.resolve("segment-0000000000000001.tmp"), "partial");
+        DiskResultCache cache = open(4096, 1 << 20);
+        cache.put("a", entry(null, "result a"));
+        assertEquals("result a", cache.get("a").graphQLResult);
+    }
+
+    @Test
+    void disablesTheTierWhenTheDirectoryCannotBeOpened() throws IOException {
+        Path notADirectory = Files.writeString(directory.resolve("file"), "");
+        DiskResultCache cache = new DiskResultCache(true, notADirectory.toString(), 4096, 1 << 20, 0.5, 10, 5);
+        cache.open();
+
+        cache.put("a", entry(null, "result a"));
+        assertNull(cache.get("a"));
+    }
+
+    private DiskResultCache open(int segmentBytes, long maxBytes) {
+        DiskResultCache cache = new DiskResultCache(true, directory.toString(), segmentBytes, maxBytes, 0.5, 10, 5);
+        cache.open();
+        return cache;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /**
+     * A payload making a record with a five-character key and no prompt exactly 100 bytes long.
+     */
+    private static String value(String prefix) {
+        return prefix + "x".repeat(100 - 28 - 5 - prefix.length());
+    }
+
+    private static BlazegraphCacheService.CachedEntry entry(String prompt, String result) {
+        return new BlazegraphCacheService.CachedEntry(prompt, result, Instant.now().toString());
+    }
+}
@@ -0,0 +1,224 @@
+package org.gait.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gait.config.UpstreamProperties;
+import org.gait.dto.Api;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GraphQLBatcherTest {
+
+    private static final String QUERY_A = "{ user(login: \"a\") { name } }";
+    private static final String QUERY_B = "{ user(login: \"b\") { name } }";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GraphQLClient graphQLClient = mock(GraphQLClient.class);
+    private GraphQLBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void parsesAnonymousSingleRootQueries() {
+        GraphQLBatcher.RootSelection selection = GraphQLBatcher.RootSelection.parse("""
+                query {
+                  user(login: "octo{cat}") {
+                    name
+                  }
+                }
+                """);
+        assertEquals("user", selection.rootField);
+        assertTrue(selection.selection.startsWith("user(login: \"octo{cat}\")"));
+        assertTrue(selection.selection.endsWith("}"));
+
+        assertEquals("country", GraphQLBatcher.RootSelection.parse("{ country(code: \"BR\") { name } }").rootField);
+    }
+
+    @Test
+    void leavesOtherQueriesAlone() {
+        assertNull(GraphQLBatcher.RootSelection.parse("query Named { user(login: \"a\") { name } }"));
+        assertNull(GraphQLBatcher.RootSelection.parse("{ a { x } b { y } }"));
+        assertNull(GraphQLBatcher.RootSelection.parse("{ user(login: \"a\") }"));
+        assertNull(GraphQLBatcher.RootSelection.parse("{ a { x } # comment\n }"));
+        assertNull(GraphQLBatcher.RootSelection.parse("mutation { a { x } }"));
+    }
+
+    @Test
+    void mergesSelectionsUnderAliases() {
+        String merged = GraphQLBatcher.merge(List.of(
+                GraphQLBatcher.RootSelection.parse("{ user(login: \"a\") { name } }"),
+                GraphQLBatcher.RootSelection.parse("{ user(login: \"b\") { name } }")));
+
+        assertEquals("query {\n  q0: user(login: \"a\") { name }\n  q1: user(login: \"b\") { name }\n}\n", merged);
+    }
+
+    @Test
+    void splitsDataAndErrorsPerAlias() throws IOException {
+        List<String> results = GraphQLBatcher.split(objectMapper, """
+                {
+                  "data": {"q0": {"name": "a"}, "q1": null},
+                  "errors": [{"message": "not found", "path": ["q1", "name"]}]
+                }""", selections());
+
+        JsonNode first = objectMapper.readTree(results.get(0));
+        assertEquals("a", first.path("data").path("user").path("name").asText());
+        assertFalse(first.has("errors"));
+
+        JsonNode second = objectMapper.readTree(results.get(1));
+        assertTrue(second.path("data").has("user"));
+        assertTrue(second.path("data").get("user").isNull());
+        assertEquals(1, second.path("errors").size());
+        assertEquals("user", second.path("errors").get(0).path("path").get(0).asText());
+        assertEquals("name", second.path("errors").get(0).path("path").get(1).asText());
+    }
+
+    @Test
+    void refusesToSplitPathlessErrors() {
+        assertNull(GraphQLBatcher.split(objectMapper, """
+                {
+                  "data": {"q0": {"name": "a"}, "q1": {"name": "b"}},
+                  "errors": [{"message": "rate limited"}]
+                }""", selections()));
+    }
+
+    @Test
+    void refusesToSplitWithoutData() {
+        assertNull(GraphQLBatcher.split(objectMapper, """
+                {"data": null, "errors": [{"message": "Syntax Error", "locations": [{"line": 2, "column": 3}]}]}""",
+                selections()));
+        assertNull(GraphQLBatcher.split(objectMapper, "{\"errors\": [{\"message\": \"bad\", \"path\": [\"q0\"]}]}",
+                selections()));
+    }
+
+    @Test
+    void refusesToSplitErrorsOutsideTheAliases() {
+        assertNull(GraphQLBatcher.split(objectMapper, """
+                {
+                  "data": {"q0": {"name": "a"}, "q1": {"name": "b"}},
+                  "errors": [{"message": "undefined field", "path": ["query", "user"]}]
+                }""", selections()));
+    }
+
+    @Test
+    void escapedIdentifiersStayInsideTheirLiteral() {
+        QueryPlan plan = new QueryPlan("{ user(login: \"", "\") { name } }");
+        String rendered = plan.render("a\") { name } evil: user(login: \"b");
+        assertEquals("{ user(login: \"a\\\") { name } evil: user(login: \\\"b\") { name } }", rendered);
+
+        GraphQLBatcher.RootSelection selection = GraphQLBatcher.RootSelection.parse(rendered);
+        assertNotNull(selection);
+        assertEquals("user", selection.rootField);
+        String merged = GraphQLBatcher.merge(List.of(selection, GraphQLBatcher.RootSelection.parse(QUERY_B)));
+        assertEquals("query {\n  q0: user(login: \"a\\\") { name } evil: user(login: \\\"b\") { name }\n"
+                + "  q1: user(login: \"b\") { name }\n}\n", merged);
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForTheWindow() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        when(graphQLClient.executeAsync(eq(Api.GITHUB), anyString())).thenReturn(upstream);
+        batcher = batcher(Duration.ofMinutes(1), 2);
+
+        CompletableFuture<String> first = batcher.executeAsync(Api.GITHUB, QUERY_A);
+        CompletableFuture<String> second = batcher.executeAsync(Api.GITHUB, QUERY_B);
+
+        ArgumentCaptor<String> sent = ArgumentCaptor.forClass(String.class);
+        verify(graphQLClient).executeAsync(eq(Api.GITHUB), sent.capture());
+        assertTrue(sent.getValue().contains("q0: user(login: \"a\")"), sent.getValue());
+        assertTrue(sent.getValue().contains("q1: user(login: \"b\")"), sent.getValue());
+
+        upstream.complete("{\"data\": {\"q0\": {\"name\": \"A\"}, \"q1\": {\"name\": \"B\"}}}");
+        assertEquals("{\"data\":{\"user\":{\"name\":\"A\"}}}", first.join());
+        assertEquals("{\"data\":{\"user\":{\"name\":\"B\"}}}", second.join());
+    }
+
+    @Test
+    void partialBatchIsSentWhenTheWindowElapses() {
+        String response = "{\"data\": {\"user\": {\"name\": \"A\"}}}";
+        when(graphQLClient.executeAsync(eq(Api.GITHUB), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        batcher = batcher(Duration.ofMillis(20), 10);
+
+        CompletableFuture<String> result = batcher.executeAsync(Api.GITHUB, QUERY_A);
+
+        // A lone query is sent as it is once its window is over.
+        verify(graphQLClient, timeout(1000)).executeAsync(Api.GITHUB, QUERY_A);
+        assertEquals(response, result.join());
+    }
+
+    @Test
+    void documentThatDoesNotValidateIsResentQueryByQuery() {
+        when(graphQLClient.executeAsync(eq(Api.GITHUB), anyString())).thenReturn(
+                CompletableFuture.completedFuture(
+                        "{\"errors\": [{\"message\": \"Syntax Error\", \"locations\": [{\"line\": 2, \"column\": 3}]}]}"),
+                CompletableFuture.completedFuture("{\"data\": {\"user\": {\"name\": \"A\"}}}"),
+                CompletableFuture.completedFuture("{\"data\": {\"user\": null}}"));
+        batcher = batcher(Duration.ofMinutes(1), 2);
+
+        CompletableFuture<String> first = batcher.executeAsync(Api.GITHUB, QUERY_A);
+        CompletableFuture<String> second = batcher.executeAsync(Api.GITHUB, QUERY_B);
+
+        assertEquals("{\"data\": {\"user\": {\"name\": \"A\"}}}", first.join());
+        assertEquals("{\"data\": {\"user\": null}}", second.join());
+        verify(graphQLClient, times(3)).executeAsync(eq(Api.GITHUB), anyString());
+    }
+
+    @Test
+    void rateLimitedDocumentFailsTheWholeBatchWithoutResending() {
+        when(graphQLClient.executeAsync(eq(Api.GITHUB), anyString())).thenReturn(CompletableFuture.completedFuture(
+                "{\"data\": null, \"errors\": [{\"type\": \"RATE_LIMITED\", \"message\": \"API rate limit exceeded\"}]}"));
+        batcher = batcher(Duration.ofMinutes(1), 2);
+
+        CompletableFuture<String> first = batcher.executeAsync(Api.GITHUB, QUERY_A);
+        CompletableFuture<String> second = batcher.executeAsync(Api.GITHUB, QUERY_B);
+
+        for (CompletableFuture<String> result : List.of(first, second)) {
+            CompletionException error = assertThrows(CompletionException.class, result::join);
+            assertTrue(error.getCause() instanceof ResponseStatusException);
+            assertTrue(error.getCause().getMessage().contains("API rate limit exceeded"), error.getCause().getMessage());
+        }
+        verify(graphQLClient, times(1)).executeAsync(eq(Api.GITHUB), anyString());
+    }
+
+    private GraphQLBatcher batcher(Duration window, int maxBatchSize) {
+        UpstreamProperties.Endpoint endpoint = new UpstreamProperties.Endpoint();
+        endpoint.setBatchWindow(window);
+        endpoint.setMaxBatchSize(maxBatchSize);
+        UpstreamProperties properties = new UpstreamProperties();
+        properties.getApis().put(Api.GITHUB, endpoint);
+        return new GraphQLBatcher(graphQLClient, properties, objectMapper);
+    }
+
+    private static List<GraphQLBatcher.RootSelection> selections() {
+        return List.of(
+                GraphQLBatcher.RootSelection.parse("{ user(login: \"a\") { name } }"),
+                GraphQLBatcher.RootSelection.parse("{ user(login: \"b\") { name } }"));
+    }
+}
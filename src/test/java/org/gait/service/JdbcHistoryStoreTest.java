@@ -0,0 +1,103 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.gait.dto.CursorPage;
+import org.gait.service.UserHistoryService.UserHistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcHistoryStoreTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-05-01T10:15:30.123456Z");
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final JdbcHistoryStore store = new JdbcHistoryStore(jdbcTemplate, null, 10, 10, 200, 50, 1, 1000, 2,
+            new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        store.shutdown();
+    }
+
+    @Test
+    void cursorResumesStrictlyAfterTheLastRow() {
+        jdbcTemplate.rows = 1;
+        CursorPage<UserHistoryEntry> first = store.find("7", null, null, null, 1);
+        assertEquals(1, first.getItems().size());
+
+        jdbcTemplate.rows = 0;
+        CursorPage<UserHistoryEntry> second = store.find("7", null, null, first.getNextCursor(), 1);
+        assertNull(second.getNextCursor());
+        assertTrue(jdbcTemplate.sql.contains("(created_at, id) < (?, ?)"));
+        assertEquals(List.of(7L, Timestamp.from(CREATED_AT), 42L, 1), jdbcTemplate.args);
+    }
+
+    @Test
+    void shortPageHasNoCursor() {
+        jdbcTemplate.rows = 1;
+        assertNull(store.find("7", null, null, null, 2).getNextCursor());
+    }
+
+    @Test
+    void malformedCursorsAreABadRequest() {
+        for (String cursor : new String[]{"not base64!", encode("no separator"), encode("yesterday|42"),
+                encode(CREATED_AT + "|x"), encode(CREATED_AT.toString())}) {
+            ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                    () -> store.find("7", null, null, cursor, 10));
+            assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        }
+        assertNull(jdbcTemplate.sql);
+    }
+
+    private static String encode(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records the query and maps the given number of identical rows.
+     */
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private int rows;
+        private String sql;
+        private List<Object> args;
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            this.sql = sql;
+            this.args = List.of(args);
+            List<T> result = new ArrayList<>();
+            try {
+                ResultSet row = mock(ResultSet.class);
+                when(row.getLong("id")).thenReturn(42L);
+                when(row.getString("prompt")).thenReturn("a prompt");
+                when(row.getTimestamp("created_at")).thenReturn(Timestamp.from(CREATED_AT));
+                for (int i = 0; i < rows; i++) {
+                    result.add(rowMapper.mapRow(row, i));
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.gait.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PayloadCodecTest {
+
+    private final PayloadCodec codec = new PayloadCodec(100, 6);
+
+    @Test
+    void keepsPayloadsBelowTheThresholdPlain() {
+        String payload = "a".repeat(99);
+        PayloadCodec.Encoded encoded = codec.encode(payload);
+        assertEquals(PayloadCodec.IDENTITY, encoded.codec);
+        assertEquals(payload, encoded.value);
+        assertEquals(payload, codec.decode(encoded.codec, encoded.value));
+    }
+
+    @Test
+    void deflatesPayloadsAtAndJustAboveTheThreshold() {
+        for (int length : new int[]{100, 101}) {
+            String payload = "a".repeat(length);
+            PayloadCodec.Encoded encoded = codec.encode(payload);
+            assertEquals(PayloadCodec.DEFLATE, encoded.codec);
+            assertEquals(payload, codec.decode(encoded.codec, encoded.value));
+        }
+    }
+
+    @Test
+    void measuresTheThresholdInUtf8Bytes() {
+        // 50 characters, 100 bytes.
+        String payload = "\u00E9".repeat(50);
+        PayloadCodec.Encoded encoded = codec.encode(payload);
+        assertEquals(PayloadCodec.DEFLATE, encoded.codec);
+        assertEquals(payload, codec.decode(encoded.codec, encoded.value));
+    }
+
+    @Test
+    void keepsIncompressiblePayloadsPlain() {
+        byte[] random = new byte[600];
+        new Random(42).nextBytes(random);
+        String payload = Base64.getEncoder().encodeToString(random);
+        PayloadCodec.Encoded encoded = codec.encode(payload);
+        assertEquals(PayloadCodec.IDENTITY, encoded.codec);
+        assertEquals(payload, encoded.value);
+    }
+
+    @Test
+    void readsPayloadsStoredWithoutACodec() {
+        assertEquals("{\"data\":{}}", codec.decode(null, "{\"data\":{}}"));
+    }
+
+    @Test
+    void rejectsUnknownCodecsAndDamagedPayloads() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode("gzip", "x"));
+
+        String stored = codec.encode("{\"data\": \"" + "x".repeat(500) + "\"}").value;
+        String truncated = Base64.getEncoder().encodeToString(
+                Arrays.copyOf(Base64.getDecoder().decode(stored), 4));
+        assertThrows(IllegalStateException.class, () -> codec.decode(PayloadCodec.DEFLATE, truncated));
+    }
+}
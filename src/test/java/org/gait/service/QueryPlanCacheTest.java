@@ -0,0 +1,94 @@
+package org.gait.service;
+
+import org.gait.dto.Api;
+import org.gait.dto.CacheStats;
+import org.gait.dto.NLPResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryPlanCacheTest {
+
+    private final QueryPlanCache cache = new QueryPlanCache(100);
+    private final AtomicInteger plannings = new AtomicInteger();
+
+    @Test
+    void reusesThePlanForAnyIdentifier() {
+        QueryPlan first = plan(Api.GITHUB, 1, response("octocat", List.of("most starred"), List.of("name"), 5));
+        QueryPlan second = plan(Api.GITHUB, 1, response("torvalds", List.of("most starred"), List.of("name"), 5));
+
+        assertSame(first, second);
+        assertEquals(1, plannings.get());
+        assertEquals("query { user(login: \"torvalds\") { name } }", second.render("torvalds"));
+
+        CacheStats stats = cache.cacheStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+    }
+
+    @Test
+    void onlyTheFirstConstraintIsPartOfTheShape() {
+        plan(Api.GITHUB, 1, response("a", List.of("most starred", "newest"), List.of("name"), 5));
+        plan(Api.GITHUB, 1, response("a", List.of("most starred", "oldest"), List.of("name"), 5));
+        assertEquals(1, plannings.get());
+
+        plan(Api.GITHUB, 1, response("a", List.of("newest"), List.of("name"), 5));
+        assertEquals(2, plannings.get());
+    }
+
+    @Test
+    void replansForAnyOtherDifference() {
+        NLPResponse base = response("a", List.of(), List.of("name"), 5);
+        plan(Api.GITHUB, 1, base);
+        plan(Api.GITHUB, 1, response("a", List.of(), List.of("name", "id"), 5));
+        plan(Api.GITHUB, 1, response("a", List.of(), List.of("name"), 10));
+        plan(Api.COUNTRIES, 1, base);
+        // A reloaded ontology never reuses an older plan.
+        plan(Api.GITHUB, 2, base);
+        assertEquals(5, plannings.get());
+    }
+
+    @Test
+    void laterChangesToTheResponseDoNotAffectTheKey() {
+        List<String> fields = new ArrayList<>(List.of("name"));
+        NLPResponse response = response("a", null, fields, 5);
+        plan(Api.GITHUB, 1, response);
+        fields.add("id");
+
+        plan(Api.GITHUB, 1, response("a", null, List.of("name"), 5));
+        assertEquals(1, plannings.get());
+    }
+
+    @Test
+    void rendersTheIdentifierAsAnEscapedLiteral() {
+        QueryPlan plan = plan(Api.GITHUB, 1, response("a", List.of(), List.of("name"), 5));
+        assertEquals("query { user(login: \"O'Brien \\\"Bob\\\" \\\\ x\") { name } }",
+                plan.render("O'Brien \"Bob\" \\ x"));
+        assertEquals("query { user(login: \"a\\nb\") { name } }", plan.render("a\nb"));
+    }
+
+    private QueryPlan plan(Api api, long generation, NLPResponse response) {
+        return cache.get(api, generation, response, () -> {
+            plannings.incrementAndGet();
+            return new QueryPlan("query { user(login: \"", "\") { " + String.join(" ", response.getFields()) + " } }");
+        });
+    }
+
+    private static NLPResponse response(String identifier, List<String> constraints, List<String> fields, int limit) {
+        NLPResponse response = new NLPResponse();
+        response.setAction("QUERY");
+        response.setTarget("user");
+        response.setIdentifier(identifier);
+        response.setSubEntity("repositories");
+        response.setConstraints(constraints);
+        response.setFields(fields);
+        response.setLimit(limit);
+        response.setApi("github");
+        return response;
+    }
+}
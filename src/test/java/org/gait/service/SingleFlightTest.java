@@ -0,0 +1,139 @@
+package org.gait.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    @Test
+    void coalescedCallersShareOneComputation() {
+        AtomicInteger computations = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> leader = flights.executeAsync("key", () -> {
+            computations.incrementAndGet();
+            return upstream;
+        }, 1000);
+        CompletableFuture<String> joiner = flights.executeAsync("key", () -> {
+            computations.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        }, 1000);
+        assertFalse(joiner.isDone());
+
+        upstream.complete("result");
+        assertEquals("result", leader.join());
+        assertEquals("result", joiner.join());
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void blockingCallersShareOneComputation() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> execute("key", () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "result";
+        }));
+        started.await();
+        AtomicReference<String> joined = new AtomicReference<>();
+        Thread joiner = new Thread(() -> joined.set(execute("key", () -> {
+            computations.incrementAndGet();
+            return "other";
+        })));
+        joiner.start();
+        // The joiner is parked on the leader's flight before the leader is released.
+        while (joiner.getState() != Thread.State.TIMED_WAITING) {
+            Thread.onSpinWait();
+        }
+
+        release.countDown();
+        joiner.join();
+        assertEquals("result", leader.join());
+        assertEquals("result", joined.get());
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void keyIsReleasedAfterAFailure() throws TimeoutException {
+        CompletableFuture<String> failed = flights.executeAsync("key",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("upstream down")), 1000);
+        ExecutionException error = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+
+        assertThrows(IllegalStateException.class, () -> flights.execute("key", () -> {
+            throw new IllegalStateException("still down");
+        }, 1000));
+
+        assertEquals("recovered", flights.execute("key", () -> "recovered", 1000));
+        assertEquals("again", flights.executeAsync("key",
+                () -> CompletableFuture.completedFuture("again"), 1000).join());
+    }
+
+    @Test
+    void computationThatThrowsFailsTheFlight() {
+        CompletableFuture<String> failed = flights.executeAsync("key", () -> {
+            throw new IllegalArgumentException("bad prompt");
+        }, 1000);
+        CompletionException error = assertThrows(CompletionException.class, failed::join);
+        assertTrue(error.getCause() instanceof IllegalArgumentException);
+        assertEquals("next", flights.executeAsync("key",
+                () -> CompletableFuture.completedFuture("next"), 1000).join());
+    }
+
+    @Test
+    void joinerTimesOutWithoutFailingTheLeader() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.executeAsync("key", () -> upstream, 1000);
+
+        assertThrows(TimeoutException.class, () -> flights.execute("key", () -> "other", 50));
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> flights.executeAsync("key", () -> upstream, 50).join());
+        assertTrue(error.getCause() instanceof TimeoutException);
+
+        upstream.complete("late");
+        assertEquals("late", leader.join());
+    }
+
+    @Test
+    void differentKeysDoNotCoalesce() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        flights.executeAsync("a", () -> pending, 1000);
+        assertEquals("b", flights.executeAsync("b", () -> CompletableFuture.completedFuture("b"), 1000).join());
+    }
+
+    private String execute(String key, Supplier<String> computation) {
+        try {
+            return flights.execute(key, computation, 5000);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.gait.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WriteBehindQueueTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> flushed = new CopyOnWriteArrayList<>();
+    private final List<String> flushingThreads = new CopyOnWriteArrayList<>();
+
+    @Test
+    void itemsBeyondAFullQueueAreDroppedNotFlushedByTheProducer() throws InterruptedException {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", 1, 1, 10, 10, 1, 0, batch -> {
+            flushingThreads.add(Thread.currentThread().getName());
+            flushing.countDown();
+            await(release);
+            flushed.addAll(batch);
+            return List.of();
+        }, meterRegistry);
+
+        queue.submit("a");
+        // The worker holds "a" in a stalled flush, "b" fills the queue, "c" has nowhere to go.
+        flushing.await();
+        queue.submit("b");
+        queue.submit("c");
+        assertEquals(1.0, dropped());
+
+        release.countDown();
+        queue.close();
+        assertEquals(List.of("a", "b"), flushed);
+        assertEquals(List.of("write-behind-test", "write-behind-test"), flushingThreads);
+    }
+
+    @Test
+    void itemsSubmittedAfterCloseAreDropped() {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test", 10, 10, 10, 10, 1, 0, batch -> {
+            flushed.addAll(batch);
+            return List.of();
+        }, meterRegistry);
+        queue.submit("a");
+        queue.close();
+
+        queue.submit("b");
+        assertEquals(List.of("a"), flushed);
+        assertEquals(1.0, dropped());
+    }
+
+    private double dropped() {
+        return meterRegistry.get("gait.write_behind.dropped")
+                .tag("queue", "test")
+                .tag("reason", "queue-full")
+                .counter()
+                .count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}